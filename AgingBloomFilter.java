@@ -0,0 +1,223 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class implements a bloom filter whose keys age out: it keeps a fixed number of generations, each a bloom
+ * filter of the keys added during one time window (e.g. one nightly batch of the differential file). Keys are
+ * added to the current generation; rotate starts a new window by clearing the oldest generation and making it
+ * the current one. A key appears if it was added in any of the live windows. So the memory and the false
+ * positive rate stay bounded under a rolling retention policy, without rebuilding the filter from the files.
+ *
+ * All generations use the same hash functions and their words are interleaved: word w of generation g is at
+ * words[w * generations + g]. The bits of a key in every generation are then next to each other (in one cache
+ * line for up to 8 generations), and appears checks all windows in one pass: for every hash function it gathers
+ * the bit of each generation into a mask, and ands the masks, stopping when no generation is left.
+ */
+
+import java.util.BitSet;
+
+public class AgingBloomFilter implements BloomFilter {
+
+    private final long[] words;//word w of generation g at w * generations + g
+    private final HashStrategy strategy;//The k hash functions over one window
+    private final KeyCanonicalizer canonicalizer;
+    private final int generations;
+    private final int windowSize;//The bits of one generation
+    private final int k;
+    private final int[] added;//The number of elements added to each generation
+    private int current = 0;//The generation of the current window
+
+    /**
+     * Creates an empty aging filter of generations windows of windowCapacity keys each, with a false positive
+     * rate of at most falsePositiveRate over all windows together. Each window is sized for
+     * 1 - (1 - falsePositiveRate)^(1 / generations), about falsePositiveRate / generations.
+     * @param generations the number of windows that are kept, between 1 and 64
+     * @param windowCapacity the number of keys added in one window
+     * @param falsePositiveRate the target false positive rate of the filter when every window is full
+     * @param canonicalizer turns the strings into the hashed bytes
+     */
+    public AgingBloomFilter(int generations, int windowCapacity, double falsePositiveRate, KeyCanonicalizer canonicalizer) {
+        this(windowStrategy(generations, windowCapacity, falsePositiveRate), generations, canonicalizer);
+    }
+
+    /**
+     * Creates an empty aging filter whose windows use the hash functions of strategy.
+     * @param strategy the k hash functions, whose filter size is the size of one window
+     * @param generations the number of windows that are kept, between 1 and 64
+     * @param canonicalizer turns the strings into the hashed bytes
+     * @throws IllegalArgumentException if generations is out of range or the windows do not fit in an array
+     */
+    public AgingBloomFilter(HashStrategy strategy, int generations, KeyCanonicalizer canonicalizer) {
+        if (generations < 1 || generations > 64)
+            throw new IllegalArgumentException("between 1 and 64 generations, not " + generations);
+        long numWords = (strategy.filterSize() + 63L) / 64 * generations;
+        if (numWords > Integer.MAX_VALUE / 64)
+            throw new IllegalArgumentException(generations + " windows of " + strategy.filterSize() + " bits are too large");
+        this.strategy = strategy;
+        this.canonicalizer = canonicalizer;
+        this.generations = generations;
+        windowSize = strategy.filterSize();
+        k = strategy.numHashes();
+        words = new long[(int) numWords];
+        added = new int[generations];
+    }
+
+    private static HashStrategy windowStrategy(int generations, int windowCapacity, double falsePositiveRate) {
+        double windowRate = -Math.expm1(Math.log1p(-falsePositiveRate) / generations);//1 - (1 - rate)^(1 / generations)
+        BloomSizing.Parameters params = BloomSizing.forFalsePositiveRate(windowCapacity, windowRate);
+        return new FNVHashStrategy(BloomSizing.leastPrime((int) params.numBits), params.numHashes);
+    }
+
+    /**
+     * Start a new window: the oldest generation is cleared and becomes the current one, so its keys no longer
+     * appear (unless they were added again in a live window).
+     */
+    public void rotate() {
+        current = (current + 1) % generations;
+        for (int w = current; w < words.length; w += generations)
+            words[w] = 0;
+        added[current] = 0;
+    }
+
+    @Override
+    public void add(String s) {
+        addCanonical(canonicalizer.fold(s));
+    }
+
+    @Override
+    public void addCanonical(byte[] key) {
+        for (int i = 0; i < k; i++) {
+            int bit = strategy.index(i, key, 0, key.length);
+            words[(bit >>> 6) * generations + current] |= 1L << bit;
+        }
+        added[current]++;
+    }
+
+    @Override
+    public boolean appears(String s) {
+        return appearsCanonical(canonicalizer.fold(s));
+    }
+
+    @Override
+    public boolean appearsCanonical(byte[] key) {
+        return windows(key) != 0;
+    }
+
+    /**
+     * Get the age of the youngest window in which a key appears.
+     * @param s a string
+     * @return 0 for the current window, 1 for the previous one, ..., or -1 if s does not appear
+     */
+    public int age(String s) {
+        long live = windows(canonicalizer.fold(s));
+        if (live == 0)
+            return -1;
+        for (int age = 0; ; age++) {
+            if ((live >>> Math.floorMod(current - age, generations) & 1) != 0)
+                return age;
+        }
+    }
+
+    /**
+     * Get the mask of the generations in which all k bits of a key are set.
+     */
+    private long windows(byte[] key) {
+        long live = generations == 64 ? -1L : (1L << generations) - 1;
+        for (int i = 0; i < k && live != 0; i++) {
+            int bit = strategy.index(i, key, 0, key.length);
+            int base = (bit >>> 6) * generations;
+            long has = 0;
+            for (int g = 0; g < generations; g++)
+                has |= ((words[base + g] >>> bit) & 1L) << g;
+            live &= has;
+        }
+        return live;
+    }
+
+    @Override
+    public void addAll(String[] keys) {
+        for (String key : keys)
+            add(key);
+    }
+
+    @Override
+    public void appearsAll(String[] keys, BitSet out) {
+        for (int i = 0; i < keys.length; i++)
+            out.set(i, appears(keys[i]));
+    }
+
+    @Override
+    public KeyCanonicalizer canonicalizer() {
+        return canonicalizer;
+    }
+
+    /**
+     * Get the size of all generations together.
+     * @return the number of bits of the filter
+     */
+    @Override
+    public int filterSize() {
+        return windowSize * generations;
+    }
+
+    /**
+     * Get the size of one generation.
+     * @return the number of bits of one window
+     */
+    public int windowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Get the number of windows that are kept.
+     * @return the number of generations
+     */
+    public int generations() {
+        return generations;
+    }
+
+    /**
+     * Get the number of elements added in the live windows.
+     * @return the number of elements added since the oldest live window started
+     */
+    @Override
+    public int dataSize() {
+        int sum = 0;
+        for (int count : added)
+            sum += count;
+        return sum;
+    }
+
+    /**
+     * Get the number of elements added in one window.
+     * @param age 0 for the current window, 1 for the previous one, ...
+     * @return the number of elements added in that window
+     */
+    public int dataSize(int age) {
+        return added[Math.floorMod(current - age, generations)];
+    }
+
+    /**
+     * Estimate the number of distinct elements of every live window from its bits (see
+     * HashedBloomFilter.estimatedCardinality), and add them up: a key added in two windows counts twice.
+     * @return the estimated number of elements, or infinity if a window is full
+     */
+    @Override
+    public double estimatedCardinality() {
+        double sum = 0;
+        for (int g = 0; g < generations; g++) {
+            int bitsSet = 0;
+            for (int w = g; w < words.length; w += generations)
+                bitsSet += Long.bitCount(words[w]);
+            if (bitsSet >= windowSize)
+                return Double.POSITIVE_INFINITY;
+            sum += -((double) windowSize / k) * Math.log(1 - (double) bitsSet / windowSize);
+        }
+        return sum;
+    }
+
+    @Override
+    public int numHashes() {
+        return k;
+    }
+}
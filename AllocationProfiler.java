@@ -0,0 +1,435 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This program profiles the heap allocation of the filters and of the lookups, so that an operation that
+ * allocates more than it should is caught from one release to the next. It is opt in: the other programs are not
+ * instrumented, and nothing is measured unless this program runs.
+ *
+ * Every operation is warmed up first (the JIT removes some allocations once the code is compiled), then run
+ * count times between two readings of ThreadMXBean.getThreadAllocatedBytes, of the calling thread and of the
+ * read-ahead threads of LineScanner (not of all threads: the threads of JFR allocate while it records). The
+ * bytes allocated by a reading itself are subtracted. The profile reports the bytes per unit of work:
+ *  - per add and per appears, of Strings and of canonical bytes, and per key of addAll and appearsAll,
+ *    for each of BloomFilterFNV, BloomFilterMurmur and BloomFilterRan,
+ *  - the retained size of each filter: the bytes allocated by its constructor (its bit array and its hash
+ *    functions, all of which it keeps) and the bytes of its bit array alone,
+ *  - per call of kMurmur.hashV on a String and on bytes,
+ *  - per string of FalsePositives.evaluate,
+ *  - per record scanned by BloomDifferential.createFilter and by a scan of the database that finds nothing,
+ *  - per lookup of BloomDifferential.retrieveRecord, for keys of the differential file, of the database only
+ *    and of neither.
+ * The profile is printed and written as JSON, an array of
+ *  {"operation", "subject", "unit", "count", "bytes", "bytesPerUnit"}
+ * objects. Every measurement is also committed as a JFR event (bloom.Allocation). With a fourth argument, a
+ * flight recording of those events and of the allocation samples of the JVM (jdk.ObjectAllocationSample, with
+ * their stack traces) is written to that file, to find the code that allocates: jfr print --events
+ * jdk.ObjectAllocationSample profile.jfr.
+ *
+ * Usage: java AllocationProfiler [directory] [number of keys] [JSON file] [JFR file]
+ * The data set of the directory is generated if it does not exist (see SyntheticDataset).
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+public class AllocationProfiler {
+
+    static final int WARMUP_ROUNDS = 3;
+    static final int BATCH_SIZE = 4096;//keys per addAll and appearsAll, as in FalsePositives
+    static final int NUM_LOOKUPS = 200;//lookups of each kind of key
+
+    /**
+     * The bytes allocated by count units of work of one operation.
+     */
+    static final class Measurement {
+        String operation;
+        String subject;
+        String unit;
+        long count;
+        long bytes;
+
+        double bytesPerUnit() {
+            return count == 0 ? 0 : (double) bytes / count;
+        }
+    }
+
+    /**
+     * A measurement, as a JFR event.
+     */
+    @Name("bloom.Allocation")
+    @Label("Allocation per operation")
+    @Category("Bloom filters")
+    static final class AllocationEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("Subject")
+        String subject;
+        @Label("Unit")
+        String unit;
+        @Label("Count")
+        long count;
+        @Label("Bytes")
+        long bytes;
+        @Label("Bytes per unit")
+        double bytesPerUnit;
+    }
+
+    /**
+     * Some work whose allocation is measured.
+     */
+    interface Work {
+        void run() throws IOException;
+    }
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<Measurement> profile = new ArrayList<Measurement>();
+
+    public static void main(String[] args) throws IOException {
+        String directory = args.length > 0 ? args[0] : ".";
+        int numKeys = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        String jsonFile = args.length > 2 ? args[2] : "allocationProfile.json";
+        String jfrFile = args.length > 3 ? args[3] : null;
+        File database = new File(directory, "database.txt");
+        if (!database.exists()) {
+            System.out.println("No data set in " + directory + ", generating a synthetic one");
+            new SyntheticDataset(42).generate(directory, 1000000, 0.1, 722);
+        }
+        Recording recording = null;
+        if (jfrFile != null) {
+            recording = new Recording();
+            recording.enable(AllocationEvent.class);
+            recording.enable("jdk.ObjectAllocationSample").withStackTrace();
+            recording.start();
+        }
+        AllocationProfiler profiler = new AllocationProfiler();
+        profiler.profileFilters(numKeys);
+        profiler.profileHashes(numKeys);
+        profiler.profileFalsePositives(numKeys);
+        profiler.profileLookups(database.getPath(), new File(directory, "differential.txt").getPath());
+        if (recording != null) {
+            recording.stop();
+            recording.dump(Paths.get(jfrFile));
+            recording.close();
+        }
+        profiler.printProfile();
+        profiler.writeJson(jsonFile);
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the JVM does not count the bytes allocated by each thread
+     */
+    public AllocationProfiler() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            throw new UnsupportedOperationException("this JVM does not count the allocation of threads");
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported())
+            throw new UnsupportedOperationException("this JVM does not count the allocation of threads");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Get the threads whose allocation is measured: the calling thread and the read-ahead threads of LineScanner.
+     */
+    private long[] measuredThreads() {
+        List<Long> ids = new ArrayList<Long>();
+        ids.add(Thread.currentThread().getId());
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getThreadName().equals("read-ahead"))
+                ids.add(info.getThreadId());
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = ids.get(i);
+        return result;
+    }
+
+    /**
+     * Get the bytes allocated so far by some threads. A thread that ends between two readings takes its bytes
+     * with it, so the work that is measured should not end threads.
+     */
+    private long allocatedBytes(long[] ids) {
+        long sum = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(ids))
+            sum += Math.max(0, bytes);//-1 for a thread that has ended
+        return sum;
+    }
+
+    /**
+     * Measure the bytes allocated by some work, after warming it up, and add them to the profile.
+     * @param operation the name of the operation
+     * @param subject what the operation works on, e.g. a filter type
+     * @param unit the unit of work, e.g. "key"
+     * @param count the number of units of one run of work
+     * @param warmup the same work, on objects that are not measured, or null if work can be run several times
+     * @param work the work that is measured
+     * @return the measurement
+     * @throws IOException if work cannot read a file
+     */
+    public Measurement measure(String operation, String subject, String unit, long count, Work warmup, Work work) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            (warmup != null ? warmup : work).run();
+        long[] ids = measuredThreads();
+        long reading = allocatedBytes(ids);
+        long before = allocatedBytes(ids);
+        work.run();
+        long after = allocatedBytes(ids) - (before - reading);//less the bytes of one reading
+        Measurement m = new Measurement();
+        m.operation = operation;
+        m.subject = subject;
+        m.unit = unit;
+        m.count = count;
+        m.bytes = Math.max(0, after - before);
+        profile.add(m);
+        AllocationEvent event = new AllocationEvent();
+        event.operation = operation;
+        event.subject = subject;
+        event.unit = unit;
+        event.count = count;
+        event.bytes = m.bytes;
+        event.bytesPerUnit = m.bytesPerUnit();
+        event.commit();
+        return m;
+    }
+
+    /**
+     * Profile add, appears, their canonical and bulk forms and the retained size of the three filters, at 10 bits
+     * per element with numKeys keys added and numKeys / 10 absent keys probed, as in FalsePositives.
+     * @param numKeys the number of keys added to each filter
+     * @throws IOException never, the filters do not read files
+     */
+    public void profileFilters(int numKeys) throws IOException {
+        FalsePositives strings = new FalsePositives(numKeys);
+        String[] keys = strings(strings, 0, numKeys);
+        String[] probes = strings(strings, numKeys, numKeys / 10);
+        int bitsPerElement = 10;
+        for (String type : new String[] {"FNV", "Murmur", "Ran"}) {
+            FalsePositives.Config config = new FalsePositives.Config(type, bitsPerElement, BloomSizing.optimalNumHashes(bitsPerElement));
+            BloomFilter warm = strings.newFilter(config);
+            BloomFilter[] filter = new BloomFilter[1];
+            measure("retained", type, "filter", 1, () -> strings.newFilter(config), () -> filter[0] = strings.newFilter(config));
+            Measurement bits = new Measurement();
+            bits.operation = "bitArray";
+            bits.subject = type;
+            bits.unit = "filter";
+            bits.count = 1;
+            bits.bytes = (filter[0].filterSize() + 63L) / 64 * 8;
+            profile.add(bits);
+
+            measure("add", type, "key", numKeys, () -> addEach(warm, keys), () -> addEach(filter[0], keys));
+            measure("appears", type, "key", probes.length, null, () -> appearsEach(filter[0], probes));
+            byte[][] canonicalKeys = canonical(filter[0], keys);
+            byte[][] canonicalProbes = canonical(filter[0], probes);
+            BloomFilter canonicalFilter = strings.newFilter(config);
+            measure("addCanonical", type, "key", numKeys, () -> addEach(warm, canonicalKeys), () -> addEach(canonicalFilter, canonicalKeys));
+            measure("appearsCanonical", type, "key", probes.length, null, () -> appearsEach(filter[0], canonicalProbes));
+            BloomFilter bulkFilter = strings.newFilter(config);
+            measure("addAll", type, "key", numKeys, () -> addAll(warm, keys), () -> addAll(bulkFilter, keys));
+            BitSet found = new BitSet(BATCH_SIZE);
+            measure("appearsAll", type, "key", probes.length, null, () -> appearsAll(filter[0], probes, found));
+        }
+    }
+
+    /**
+     * Profile kMurmur.hashV on Strings, which encodes every String, and on bytes.
+     * @param numKeys the number of keys hashed
+     * @throws IOException never
+     */
+    public void profileHashes(int numKeys) throws IOException {
+        FalsePositives strings = new FalsePositives(numKeys);
+        String[] keys = strings(strings, 0, numKeys);
+        byte[][] bytes = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++)
+            bytes[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+        kMurmur hash = new kMurmur(new Random(42).nextInt(), BloomSizing.leastPrime(numKeys * 10));
+        int[] sink = new int[1];
+        measure("hashV(String)", "kMurmur", "call", numKeys, null, () -> {
+            for (String key : keys)
+                sink[0] += hash.hashV(key);
+        });
+        measure("hashV(byte[])", "kMurmur", "call", numKeys, null, () -> {
+            for (byte[] key : bytes)
+                sink[0] += hash.hashV(key, 0, key.length);
+        });
+    }
+
+    /**
+     * Profile FalsePositives.evaluate for each filter type, per string added or probed, string generation included.
+     * @param numKeys the number of strings added
+     * @throws IOException never
+     */
+    public void profileFalsePositives(int numKeys) throws IOException {
+        FalsePositives experiment = new FalsePositives(numKeys);
+        for (String type : new String[] {"FNV", "Murmur", "Ran"}) {
+            FalsePositives.Config config = new FalsePositives.Config(type, 10, BloomSizing.optimalNumHashes(10));
+            measure("FalsePositives.evaluate", type, "string", experiment.largerSetSize + experiment.smallerSetSize,
+                    null, () -> experiment.evaluate(config));
+        }
+    }
+
+    /**
+     * Profile the creation of the filter of the differential file, a scan of the database, and the lookups of
+     * BloomDifferential, with the filter of the differential file at a false positive rate of 1%.
+     * @param database the name of the database
+     * @param diffFile the name of the differential file
+     * @throws IOException if the files cannot be read
+     */
+    public void profileLookups(String database, String diffFile) throws IOException {
+        BloomDifferential differential = new BloomDifferential();
+        BloomFilter[] filter = new BloomFilter[1];
+        int numRecords = BloomDifferential.countLines(diffFile);
+        measure("createFilter", "BloomDifferential", "record", numRecords, null,
+                () -> filter[0] = differential.createFilter(diffFile, 0.01));
+        Measurement bits = new Measurement();
+        bits.operation = "bitArray";
+        bits.subject = "BloomDifferential";
+        bits.unit = "filter";
+        bits.count = 1;
+        bits.bytes = (filter[0].filterSize() + 63L) / 64 * 8;
+        profile.add(bits);
+
+        Random random = new Random(42);
+        String[] diffKeys = new String[NUM_LOOKUPS];
+        String[] databaseKeys = new String[NUM_LOOKUPS];
+        String[] absentKeys = new String[NUM_LOOKUPS];
+        int numDatabaseRecords;
+        try (LineIndex diffLines = LineIndex.open(diffFile); LineIndex databaseLines = LineIndex.open(database)) {
+            numDatabaseRecords = databaseLines.numLines();
+            for (int i = 0; i < NUM_LOOKUPS; i++) {
+                diffKeys[i] = BloomDifferential.keyOf(diffLines.line(random.nextInt(diffLines.numLines())));
+                String key;
+                do {//a key of the database that is not in the differential file
+                    key = BloomDifferential.keyOf(databaseLines.line(random.nextInt(numDatabaseRecords)));
+                } while (filter[0].appears(key));
+                databaseKeys[i] = key;
+                absentKeys[i] = "no such key " + i;
+            }
+        }
+        LineScanner scanner = LineScanner.forCurrentThread();
+        measure("scan", "database", "record", numDatabaseRecords, null, () -> scanner.find(database, "nosuchkey"));
+        measure("retrieveRecord", "differential key", "lookup", NUM_LOOKUPS, null,
+                () -> retrieveEach(differential, diffKeys, diffFile, database));
+        measure("retrieveRecord", "database key", "lookup", NUM_LOOKUPS, null,
+                () -> retrieveEach(differential, databaseKeys, diffFile, database));
+        measure("retrieveRecord", "absent key", "lookup", NUM_LOOKUPS, null,
+                () -> retrieveEach(differential, absentKeys, diffFile, database));
+    }
+
+    private static String[] strings(FalsePositives generator, long first, int count) {
+        char[] buffer = new char[16];
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++)
+            strings[i] = generator.string(first + i, buffer);
+        return strings;
+    }
+
+    private static byte[][] canonical(BloomFilter filter, String[] keys) {
+        byte[][] bytes = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++)
+            bytes[i] = filter.canonicalizer().fold(keys[i]);
+        return bytes;
+    }
+
+    private static void addEach(BloomFilter filter, String[] keys) {
+        for (String key : keys)
+            filter.add(key);
+    }
+
+    private static void addEach(BloomFilter filter, byte[][] keys) {
+        for (byte[] key : keys)
+            filter.addCanonical(key);
+    }
+
+    private static int appearsEach(BloomFilter filter, String[] keys) {
+        int found = 0;
+        for (String key : keys)
+            if (filter.appears(key))
+                found++;
+        return found;
+    }
+
+    private static int appearsEach(BloomFilter filter, byte[][] keys) {
+        int found = 0;
+        for (byte[] key : keys)
+            if (filter.appearsCanonical(key))
+                found++;
+        return found;
+    }
+
+    private static void addAll(BloomFilter filter, String[] keys) {
+        String[] batch = new String[BATCH_SIZE];
+        for (int i = 0; i < keys.length; i += BATCH_SIZE) {
+            int size = Math.min(BATCH_SIZE, keys.length - i);
+            String[] strings = size == BATCH_SIZE ? batch : new String[size];
+            System.arraycopy(keys, i, strings, 0, size);
+            filter.addAll(strings);
+        }
+    }
+
+    private static void appearsAll(BloomFilter filter, String[] keys, BitSet found) {
+        String[] batch = new String[BATCH_SIZE];
+        for (int i = 0; i < keys.length; i += BATCH_SIZE) {
+            int size = Math.min(BATCH_SIZE, keys.length - i);
+            String[] strings = size == BATCH_SIZE ? batch : new String[size];
+            System.arraycopy(keys, i, strings, 0, size);
+            filter.appearsAll(strings, found);
+        }
+    }
+
+    private static void retrieveEach(BloomDifferential differential, String[] keys, String diffFile, String database) {
+        for (String key : keys)
+            differential.retrieveRecord(key, diffFile, database);
+    }
+
+    /**
+     * Get the measurements made so far.
+     * @return the profile, in the order of the measurements
+     */
+    public List<Measurement> profile() {
+        return profile;
+    }
+
+    /**
+     * Print the profile as a table.
+     */
+    public void printProfile() {
+        System.out.printf("%-24s %-18s %-8s %10s %14s %14s%n", "operation", "subject", "unit", "count", "bytes", "bytes/unit");
+        for (Measurement m : profile)
+            System.out.printf(Locale.ROOT, "%-24s %-18s %-8s %10d %14d %14.2f%n", m.operation, m.subject, m.unit, m.count, m.bytes, m.bytesPerUnit());
+    }
+
+    /**
+     * Write the profile to a JSON file, as an array of objects.
+     * @param fileName the name of the file
+     */
+    public void writeJson(String fileName) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(fileName))) {
+            out.println("[");
+            for (int i = 0; i < profile.size(); i++) {
+                Measurement m = profile.get(i);
+                out.printf(Locale.ROOT, "  {\"operation\": \"%s\", \"subject\": \"%s\", \"unit\": \"%s\", \"count\": %d, \"bytes\": %d, "
+                        + "\"bytesPerUnit\": %.2f}%s%n", m.operation, m.subject, m.unit, m.count, m.bytes, m.bytesPerUnit(),
+                        i + 1 < profile.size() ? "," : "");
+            }
+            out.println("]");
+        } catch (IOException e) {
+            System.out.println("Exception in writeJson(" + fileName + "), msg=" + e);
+        }
+    }
+}
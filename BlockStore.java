@@ -0,0 +1,454 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class implements a block-compressed version of a database or differential file.
+ * The records of the text file are grouped into blocks of about 64 KB of encoded records, and every block is compressed
+ * with Deflate. Inside a block, a record "word1 word2 word3 word4 year1 n1 m1 year2 n2 m2 ..." is stored as
+ *  its key text, the number of (year, n, m) triples, and the triples as zigzag varints of the differences to
+ *  the previous triple,
+ * so the increasing years and the similar counts take one or two bytes each before compression. A record that
+ * does not have this form is stored as text, so every file is stored exactly.
+ *
+ * A block index at the end of the file stores, for every block, its position and the sorted 32-bit hashes of
+ * the keys in it. A lookup only reads and decompresses the blocks whose index contains the hash of its key, and
+ * the decompressed blocks are kept in an LRU cache.
+ *
+ * Usage: java BlockStore compress file.txt file.blk
+ *        java BlockStore lookup file.blk key...
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class BlockStore implements AutoCloseable {
+
+    static final int MAGIC = 0x424c4b31;//"BLK1"
+    static final int BLOCK_SIZE = 1 << 16;//bytes of encoded records per block, before compression
+    private static final long KEY_SEED = 0x2545f491L;//seed of the key hashes in the block index
+
+    private static final byte RECORD = 0;//a record stored as key and delta-encoded triples
+    private static final byte TEXT = 1;//a line stored as it is
+
+    /**
+     * A decompressed block: its lines and the keys of the lines.
+     */
+    static final class Block {
+        final String[] lines;
+        final String[] keys;
+
+        Block(String[] lines, String[] keys) {
+            this.lines = lines;
+            this.keys = keys;
+        }
+    }
+
+    private final String fileName;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;//compressed length
+    private final int[] rawLengths;//length of the decompressed block
+    private final int[][] keyHashes;//the sorted key hashes of every block
+    private final long numRecords;
+    private final Map<Integer, Block> cache;
+
+    private long bytesRead;
+    private long cacheHits;
+    private long cacheMisses;
+
+    public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals("compress")) {
+            long start = System.nanoTime();
+            write(args[1], args[2]);
+            long raw = new File(args[1]).length();
+            long compressed = new File(args[2]).length();
+            System.out.printf("%s: %d bytes -> %s: %d bytes (%.1f%%) in %.1f s%n", args[1], raw, args[2], compressed,
+                    100.0 * compressed / Math.max(1, raw), (System.nanoTime() - start) / 1e9);
+        } else if (args.length >= 3 && args[0].equals("lookup")) {
+            try (BlockStore store = new BlockStore(args[1], 64)) {
+                for (int i = 2; i < args.length; i++) {
+                    String record = store.find(KeyCanonicalizer.stripWhitespace(args[i]));
+                    System.out.println(record == null ? args[i] + " does not exist!" : record);
+                }
+                System.out.println(store.stats());
+            } catch (IOException e) {
+                System.out.println("Exception in getFileContents(" + args[1] + "), msg=" + e);
+            }
+        } else {
+            System.out.println("Usage: java BlockStore compress file.txt file.blk");
+            System.out.println("       java BlockStore lookup file.blk key...");
+        }
+    }
+
+    /**
+     * Open a block file written by write.
+     * @param fileName the name of the block file
+     * @param cacheBlocks the number of decompressed blocks kept in memory
+     * @throws IOException if the file cannot be read or is not a block file
+     */
+    public BlockStore(String fileName, int cacheBlocks) throws IOException {
+        this.fileName = fileName;
+        raf = new RandomAccessFile(fileName, "r");
+        channel = raf.getChannel();
+        try {
+            long length = channel.size();
+            if (length < 12 || readFully(0, 4).getInt() != MAGIC)
+                throw new IOException(fileName + " is not a block file");
+            long indexOffset = readFully(length - 8, 8).getLong();
+            ByteBuffer index = readFully(indexOffset, (int) (length - 8 - indexOffset));
+            int numBlocks = index.getInt();
+            blockOffsets = new long[numBlocks];
+            blockLengths = new int[numBlocks];
+            rawLengths = new int[numBlocks];
+            keyHashes = new int[numBlocks][];
+            long records = 0;
+            for (int b = 0; b < numBlocks; b++) {
+                blockOffsets[b] = index.getLong();
+                blockLengths[b] = index.getInt();
+                rawLengths[b] = index.getInt();
+                keyHashes[b] = new int[index.getInt()];
+                for (int i = 0; i < keyHashes[b].length; i++)
+                    keyHashes[b][i] = index.getInt();
+                records += keyHashes[b].length;
+            }
+            numRecords = records;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+        cache = new LinkedHashMap<Integer, Block>(16, 0.75f, true) {//access order, the eldest entry is the LRU
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+                return size() > cacheBlocks;
+            }
+        };
+    }
+
+    /**
+     * Find the first record with the key, as a scan of the text file would.
+     * @param myKey the key without whitespace, "word1word2word3word4"
+     * @return the record, or null if no record has the key
+     */
+    public String find(String myKey) {
+        int hash = keyHash(myKey);
+        for (int b = 0; b < keyHashes.length; b++) {
+            if (Arrays.binarySearch(keyHashes[b], hash) < 0)//the key is not in this block
+                continue;
+            Block block = block(b);
+            for (int i = 0; i < block.keys.length; i++)
+                if (block.keys[i].equals(myKey))
+                    return block.lines[i];
+        }
+        return null;
+    }
+
+    /**
+     * Get a decompressed block, from the cache if it is there.
+     * @param b the block, 0 <= b < numBlocks()
+     * @return the block
+     */
+    public Block block(int b) {
+        synchronized (cache) {
+            Block block = cache.get(b);
+            if (block != null) {
+                cacheHits++;
+                return block;
+            }
+            cacheMisses++;
+        }
+        Block block = decode(b);//outside the lock, so that threads decompress different blocks in parallel
+        synchronized (cache) {
+            cache.put(b, block);
+        }
+        return block;
+    }
+
+    /**
+     * Get the number of blocks of the file.
+     * @return the number of blocks
+     */
+    public int numBlocks() {
+        return keyHashes.length;
+    }
+
+    /**
+     * Get the number of records of the file.
+     * @return the number of records
+     */
+    public long numRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Get the counters of this store.
+     * @return the bytes read from the file for blocks, and the cache hits and misses
+     */
+    public synchronized String stats() {
+        synchronized (cache) {
+            return fileName + ": " + bytesRead + " bytes read, " + cacheHits + " cache hits, " + cacheMisses
+                    + " cache misses";
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * Decompress a block into raw, which has the length of the block before compression.
+     * @param compressed the compressed block
+     * @param length the number of bytes of the compressed block
+     * @param raw receives the block
+     * @throws DataFormatException if the block is corrupt or truncated, or does not fill raw exactly
+     */
+    static void inflate(byte[] compressed, int length, byte[] raw) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, 0, length);
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, n, raw.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new DataFormatException("truncated block");//no more input will come
+                n += inflated;
+            }
+            if (n != raw.length || !inflater.finished())
+                throw new DataFormatException("block of " + n + " bytes, " + raw.length + " expected");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Read and decompress a block.
+     */
+    private Block decode(int b) {
+        byte[] raw = new byte[rawLengths[b]];
+        try {
+            ByteBuffer compressed = readFully(blockOffsets[b], blockLengths[b]);
+            synchronized (this) {
+                bytesRead += blockLengths[b];
+            }
+            inflate(compressed.array(), blockLengths[b], raw);
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalStateException("Exception in getFileContents(" + fileName + "), block " + b + ", msg=" + e, e);
+        }
+
+        int count = keyHashes[b].length;
+        String[] lines = new String[count];
+        String[] keys = new String[count];
+        int[] pos = {0};
+        StringBuilder sb = new StringBuilder(256);
+        for (int i = 0; i < count; i++) {
+            byte type = raw[pos[0]++];
+            int length = (int) readVarint(raw, pos);
+            String text = new String(raw, pos[0], length, StandardCharsets.UTF_8);
+            pos[0] += length;
+            if (type == TEXT) {
+                lines[i] = text;
+                keys[i] = BloomDifferential.keyOf(text);
+                continue;
+            }
+            sb.setLength(0);
+            sb.append(text);
+            long numTriples = readVarint(raw, pos);
+            long year = 0, n = 0, m = 0;
+            for (long t = 0; t < numTriples; t++) {
+                year += zigzagDecode(readVarint(raw, pos));
+                n += zigzagDecode(readVarint(raw, pos));
+                m += zigzagDecode(readVarint(raw, pos));
+                sb.append(' ').append(year).append(' ').append(n).append(' ').append(m);
+            }
+            lines[i] = sb.toString();
+            keys[i] = text.replace(" ", "");
+        }
+        return new Block(lines, keys);
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("unexpected end of " + fileName);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Compress a text file of records into a block file. The text file is read as UTF-8, as LineScanner reads it.
+     * @param textFile the name of the database or differential file
+     * @param blockFile the name of the block file to write
+     */
+    public static void write(String textFile, String blockFile) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+        List<Integer> hashes = new ArrayList<Integer>();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        Deflater deflater = new Deflater();
+        byte[] compressed = new byte[BLOCK_SIZE * 2];
+        int numBlocks = 0;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(textFile), StandardCharsets.UTF_8), 1 << 16);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(blockFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            long position = 4;
+            String line;
+            while (true) {
+                line = br.readLine();
+                if (line != null) {
+                    encode(line, block);
+                    hashes.add(keyHash(BloomDifferential.keyOf(line)));
+                }
+                if (hashes.isEmpty() || (line != null && block.size() < BLOCK_SIZE)) {
+                    if (line == null)
+                        break;
+                    continue;
+                }
+                //the block is full, or the file ended: compress it and add it to the index
+                byte[] raw = block.toByteArray();
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == compressed.length)
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    length += deflater.deflate(compressed, length, compressed.length - length);
+                }
+                out.write(compressed, 0, length);
+
+                int[] sorted = new int[hashes.size()];
+                for (int i = 0; i < sorted.length; i++)
+                    sorted[i] = hashes.get(i);
+                Arrays.sort(sorted);
+                indexOut.writeLong(position);
+                indexOut.writeInt(length);
+                indexOut.writeInt(raw.length);
+                indexOut.writeInt(sorted.length);
+                for (int hash : sorted)
+                    indexOut.writeInt(hash);
+
+                position += length;
+                numBlocks++;
+                block.reset();
+                hashes.clear();
+                if (line == null)
+                    break;
+            }
+            out.writeInt(numBlocks);
+            out.write(index.toByteArray());
+            out.writeLong(position);
+        } catch (IOException e) {
+            System.out.println("Exception in getFileContents(" + textFile + "), msg=" + e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Append a record to the uncompressed block, with its triples delta-encoded if the record has the form
+     * "word1 word2 word3 word4 year1 n1 m1 ..." with canonical numbers; as text otherwise.
+     */
+    private static void encode(String line, ByteArrayOutputStream block) {
+        String[] arrOfStr = line.split(" ", 5);
+        if (arrOfStr.length == 5) {
+            String[] numbers = arrOfStr[4].split(" ", -1);
+            long[] values = new long[numbers.length];
+            boolean exact = numbers.length % 3 == 0;
+            for (int i = 0; exact && i < numbers.length; i++) {
+                values[i] = parseCanonical(numbers[i]);
+                exact = values[i] >= 0;
+            }
+            if (exact) {
+                byte[] key = line.substring(0, line.length() - arrOfStr[4].length() - 1).getBytes(StandardCharsets.UTF_8);
+                block.write(RECORD);
+                writeVarint(block, key.length);
+                block.write(key, 0, key.length);
+                writeVarint(block, numbers.length / 3);
+                for (int i = 0; i < values.length; i++)//the difference to the same column of the previous triple
+                    writeVarint(block, zigzagEncode(values[i] - (i >= 3 ? values[i - 3] : 0)));
+                return;
+            }
+        }
+        byte[] text = line.getBytes(StandardCharsets.UTF_8);
+        block.write(TEXT);
+        writeVarint(block, text.length);
+        block.write(text, 0, text.length);
+    }
+
+    /**
+     * Parse a number that prints back to the same text.
+     * @return the number, or -1 if s is not a non-negative decimal number without leading zeros, below 10^18
+     */
+    private static long parseCanonical(String s) {
+        if (s.isEmpty() || s.length() > 18 || (s.length() > 1 && s.charAt(0) == '0'))
+            return -1;
+        long value = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Get the hash of a key stored in the block index.
+     * @param myKey the key without whitespace
+     * @return a 32-bit hash of the key
+     */
+    static int keyHash(String myKey) {
+        byte[] bytes = myKey.getBytes(StandardCharsets.UTF_8);
+        return (int) Hashes.murmur3x64(bytes, 0, bytes.length, KEY_SEED);
+    }
+
+    private static long zigzagEncode(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long zigzagDecode(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7fL) != 0) {
+            out.write((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarint(byte[] buf, int[] pos) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf[pos[0]++];
+            v |= (long) (b & 0x7f) << shift;
+            if (b >= 0)
+                return v;
+        }
+    }
+}
@@ -4,13 +4,43 @@
  * All rights reserved.
  * This class implements a bloom filter that stores all keys in a differential file, 
  * and uses the bloom filter for faster query retrieval.
+ * A lookup canonicalizes its key once (see KeyCanonicalizer) and uses the same bytes to probe the filter and to
+ * compare with the keys of the files, with the canonicalizer of the filter. By default keys match exactly, as
+ * the records of the files are compared exactly, so a key that differs only in case is not a false positive.
  */
 
 import java.io.*;
 
 public class BloomDifferential {
 
-    private BloomFilterFNV diffFilter;
+    private BloomFilter diffFilter;
+    private BloomFilter databaseFilter; //Optional filter of the keys of the database, see useDatabaseFilter
+    private StaticDatabaseIndex databaseIndex; //Optional index of the records of the database, see useDatabaseIndex
+    private final KeyCanonicalizer canonicalizer; //The canonicalizer of the filters created by createFilter
+
+    /**
+     * Create a BloomDifferential whose keys match exactly.
+     */
+    public BloomDifferential(){
+        this(KeyCanonicalizer.CASE_SENSITIVE);
+    }
+
+    /**
+     * Create a BloomDifferential whose filters and key comparisons use canonicalizer, e.g.
+     * KeyCanonicalizer.LOWER_CASE to find records whatever the case of the key.
+     * @param canonicalizer the canonicalizer of the filters created by createFilter
+     */
+    public BloomDifferential(KeyCanonicalizer canonicalizer){
+        this.canonicalizer = canonicalizer;
+    }
+
+    /**
+     * Get the canonicalizer of the filters created by createFilter.
+     * @return the canonicalizer
+     */
+    public KeyCanonicalizer canonicalizer(){
+        return canonicalizer;
+    }
 
     /**
      * Returns a bloom filter corresponding to the records in the file diffFile.
@@ -21,23 +51,173 @@ public class BloomDifferential {
      * @param diffFile the name of the file whose content is to be stored in the created bloom filter
      * @return a bloom filter
      */
-    public BloomFilterFNV createFilter(String diffFile, int numItems, int bitsPerElement){
-        diffFilter = new BloomFilterFNV(numItems, bitsPerElement);
+    public BloomFilter createFilter(String diffFile, int numItems, int bitsPerElement){
+        diffFilter = new BloomFilterFNV(numItems, bitsPerElement, BloomSizing.optimalNumHashes(bitsPerElement), canonicalizer);
+        fillFilter(diffFile);
+        return diffFilter;
+    }
 
-        File file = new File(diffFile);
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] arrOfStr = line.split(" ", 5); //only the first 4 words are the key
-                String temp = "";
-                for(int i = 0; i < arrOfStr.length - 1; i++){
-                    temp = temp + arrOfStr[i];
-                }
-                diffFilter.add(temp);
-            }
+    /**
+     * Add the keys of all records in diffFile to diffFilter. The canonical bytes of the keys are taken from the
+     * lines directly, without decoding them.
+     * @param diffFile the name of the differential file
+     */
+    private void fillFilter(String diffFile){
+        KeyCanonicalizer keys = diffFilter.canonicalizer();
+        try {
+            LineScanner.forCurrentThread().scan(diffFile, (buf, start, end) -> {
+                diffFilter.addCanonical(keys.lineKey(buf, start, end));
+                return true;
+            });
         }catch(IOException e){
             System.out.println("Exception in getFileContents(" + diffFile + "), msg=" + e);
         }
+    }
+
+    /**
+     * Get the key of a record: its first 4 words, concatenated without the spaces.
+     * @param line a record "word1 word2 word3 word4 year1 n1 m1 ..."
+     * @return "word1word2word3word4"
+     */
+    static String keyOf(String line){
+        String[] arrOfStr = line.split(" ", 5); //only the first 4 words are the key
+        StringBuilder temp = new StringBuilder(line.length());
+        for(int i = 0; i < arrOfStr.length - 1; i++){
+            temp.append(arrOfStr[i]);
+        }
+        return temp.toString();
+    }
+
+    /**
+     * Count the lines, that is the records, of a file.
+     * @param fileName the name of the file
+     * @return the number of lines in the file
+     */
+    static int countLines(String fileName){
+        int count = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(new File(fileName)), 1 << 16)) {
+            while (br.readLine() != null)
+                count++;
+        }catch(IOException e){
+            System.out.println("Exception in getFileContents(" + fileName + "), msg=" + e);
+        }
+        return count;
+    }
+
+    /**
+     * Returns a bloom filter corresponding to the records in the file diffFile, sized from the number of lines
+     * of diffFile so that its false positive rate is at most falsePositiveRate.
+     * @param diffFile the name of the file whose content is to be stored in the created bloom filter
+     * @param falsePositiveRate the target false positive rate of the filter
+     * @return a bloom filter
+     */
+    public BloomFilter createFilter(String diffFile, double falsePositiveRate){
+        int numItems = countLines(diffFile);
+        BloomSizing.Parameters params = BloomSizing.forFalsePositiveRate(numItems, falsePositiveRate);
+        diffFilter = new BloomFilterFNV(numItems, params.bitsPerElement(), params.numHashes, canonicalizer);
+        fillFilter(diffFile);
+        return diffFilter;
+    }
+
+    /**
+     * Stores the keys of the records in the file diffFile in the given empty filter, and uses it for the
+     * following retrievals. Any BloomFilter can be used, so the fastest one can be chosen per deployment.
+     * @param diffFile the name of the file whose content is to be stored in the filter
+     * @param filter an empty bloom filter sized for the number of records of diffFile
+     * @return filter
+     */
+    public BloomFilter createFilter(String diffFile, BloomFilter filter){
+        diffFilter = filter;
+        fillFilter(diffFile);
+        return diffFilter;
+    }
+
+    /**
+     * Returns a bloom filter corresponding to the records of a block-compressed differential file, sized so that
+     * its false positive rate is at most falsePositiveRate.
+     * @param diffStore the block file of the differential file, see BlockStore
+     * @param falsePositiveRate the target false positive rate of the filter
+     * @return a bloom filter
+     */
+    public BloomFilter createFilter(BlockStore diffStore, double falsePositiveRate){
+        int numItems = (int) diffStore.numRecords();
+        BloomSizing.Parameters params = BloomSizing.forFalsePositiveRate(numItems, falsePositiveRate);
+        diffFilter = new BloomFilterFNV(numItems, params.bitsPerElement(), params.numHashes, canonicalizer);
+        for(int b = 0; b < diffStore.numBlocks(); b++){
+            for(String myKey : diffStore.block(b).keys){
+                diffFilter.add(myKey);
+            }
+        }
+        return diffFilter;
+    }
+
+    /**
+     * Use a filter that already stores the keys of the differential file, for example one read from a
+     * checkpoint, and to which new keys may still be added (see DifferentialTailer).
+     * @param filter the bloom filter storing the keys of the differential file
+     */
+    public void useFilter(BloomFilter filter){
+        diffFilter = filter;
+    }
+
+    /**
+     * Start a new window of an AgingBloomFilter given to useFilter, and add to it the keys of a batch of records,
+     * e.g. the records appended to the differential file by one nightly backup. The keys of the oldest window no
+     * longer appear.
+     * @param batchFile the name of the file holding the records of the new window
+     * @throws IllegalStateException if the filter is not an AgingBloomFilter
+     */
+    public void addWindow(String batchFile){
+        if(!(diffFilter instanceof AgingBloomFilter)){
+            throw new IllegalStateException("addWindow needs an AgingBloomFilter, see useFilter");
+        }
+        ((AgingBloomFilter) diffFilter).rotate();
+        fillFilter(batchFile);
+    }
+
+    /**
+     * Use a filter of the keys of the database (see DatabaseFilter), so that a key that is in neither file is
+     * rejected without scanning the database, and only the keys that appear in it are looked up there. It should
+     * use the canonicalizer of the filter of the differential file, e.g.
+     * DatabaseFilter.open(database, database + ".bloom", 0.01, canonicalizer()).
+     * @param filter the filter of the keys of the database, or null to look up every key that is not in the
+     *  differential file in the database
+     */
+    public void useDatabaseFilter(BloomFilter filter){
+        databaseFilter = filter;
+    }
+
+    /**
+     * Get the filter given to useDatabaseFilter.
+     * @return the filter of the keys of the database, or null
+     */
+    public BloomFilter getDatabaseFilter(){
+        return databaseFilter;
+    }
+
+    /**
+     * Use an index of the records of the database (see StaticDatabaseIndex), so that a key that is not in the
+     * differential file is looked up in the database with at most one read instead of a scan. The index is used
+     * for the database it was built for, e.g. StaticDatabaseIndex.open(database, database + ".phf", canonicalizer()).
+     * @param index the index of the database, or null to scan the database
+     */
+    public void useDatabaseIndex(StaticDatabaseIndex index){
+        databaseIndex = index;
+    }
+
+    /**
+     * Get the index given to useDatabaseIndex.
+     * @return the index of the database, or null
+     */
+    public StaticDatabaseIndex getDatabaseIndex(){
+        return databaseIndex;
+    }
+
+    /**
+     * Get the bloom filter created by createFilter.
+     * @return the bloom filter storing the keys of the differential file, or null if createFilter was not called
+     */
+    public BloomFilter getFilter(){
         return diffFilter;
     }
 
@@ -50,53 +230,94 @@ public class BloomDifferential {
      *  If the record appears in the diffFile, return the record there. Otherwise return the record stored in database
      */
     public String retrieveRecord(String key,  String diffFile, String database){
-        String myKey = key.replaceAll("\\s+","");
-        if(diffFilter.appears(myKey)){
-            File file = new File(diffFile);
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] arrOfStr = line.split(" ", 5);
-                    String temp = "";
-                    for(int i = 0; i < arrOfStr.length - 1; i++){
-                        temp = temp + arrOfStr[i];
-                    }
-                    if(temp.equals(myKey)){
-//                        System.out.println("Found in DiffFile.txt");
-//                        System.out.println(line);
-                        return line;
-                    }
+        KeyCanonicalizer keys = diffFilter.canonicalizer();
+        byte[] myKey = keys.canonicalize(key);//once for the filter and both files
+        if(diffFilter.appearsCanonical(myKey)){
+            try {
+                String line = LineScanner.forCurrentThread().find(diffFile, myKey, keys);//compares the keys as bytes
+                if(line != null){
+//                    System.out.println("Found in DiffFile.txt");
+//                    System.out.println(line);
+                    return line;
                 }
               //key is not found in DiffFile, the Bloom filter gave a false positive
-                return retrieveRecordfromDatabase(myKey, database); //search database
+                return retrieveRecordfromDatabase(key, myKey, keys, database); //search database
             }catch(IOException e){
                 System.out.println("Exception in getFileContents(" + diffFile + "), msg=" + e);
             }
         }else{// key is not in diffFile
-            return retrieveRecordfromDatabase(myKey, database);
+            return retrieveRecordfromDatabase(key, myKey, keys, database);
         }
         return key + " does not exist!";
     }
 
     /**
-     * Retrieve the record associated with the key from the database.
-     * @param myKey a key whose value/record is to be retrieved
+     * Retrieve the newest record associated with the key. If the filter says the key may be in diffFile,
+     * diffFile and database are scanned concurrently (see PipelinedLookup), so a false positive does not add
+     * a full scan of diffFile before the database scan. A key that is not in the filter of the database is only
+     * looked up in diffFile, and with an index of the database there is no database scan to overlap.
+     * @param key the key "word1 word2 word3 word4"
+     * @param diffFile name of the differential file that stores changed records
+     * @param database name of the database where all records (all old records) are stored
+     * @param pipeline the threads of the concurrent scans
+     * @return the record associated with the key, as retrieveRecord(key, diffFile, database)
+     */
+    public String retrieveRecord(String key, String diffFile, String database, PipelinedLookup pipeline){
+        if(databaseFilter != null && !databaseFilter.appearsCanonical(databaseFilter.canonicalizer().canonicalize(key))){
+            return retrieveRecord(key, diffFile, database);//only diffFile may have the key, nothing to overlap
+        }
+        if(databaseIndex != null && databaseIndex.database().equals(database)){
+            return retrieveRecord(key, diffFile, database);//the database costs one read, nothing to overlap
+        }
+        String record = pipeline.retrieveRecord(key, diffFilter, diffFile, database);
+        return record != null ? record : "Key does not exist!";
+    }
+
+    /**
+     * Retrieve the newest record associated with the key from block-compressed files. The records of block files
+     * match the key exactly, whatever the canonicalizer of the filter.
+     * @param key the key "word1 word2 word3 word4"
+     * @param diffStore the block file of the differential file
+     * @param database the block file of the database
+     * @return the record associated with the key, as retrieveRecord(key, diffFile, database)
+     */
+    public String retrieveRecord(String key, BlockStore diffStore, BlockStore database){
+        String myKey = KeyCanonicalizer.stripWhitespace(key);
+        String record = null;
+        if(diffFilter.appearsCanonical(diffFilter.canonicalizer().canonicalize(myKey))){
+            record = diffStore.find(myKey);//null if the Bloom filter gave a false positive
+        }
+        if(record == null && (databaseFilter == null || databaseFilter.appears(myKey))){
+            record = database.find(myKey);
+        }
+        return record != null ? record : "Key does not exist!";
+    }
+
+    /**
+     * Retrieve the record associated with the key from the database, unless the filter of the database says
+     * that the key is not there. The record is read through the index of the database if there is one.
+     * @param key a key whose value/record is to be retrieved
+     * @param myKey canonical bytes of key
+     * @param keys the canonicalizer of myKey
      * @param database name of the file where all records are stored
      * @return the record associated with the key
      */
-    private String retrieveRecordfromDatabase(String myKey, String database){
-        File file = new File(database);
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+    private String retrieveRecordfromDatabase(String key, byte[] myKey, KeyCanonicalizer keys, String database){
+        if(databaseFilter != null){
+            KeyCanonicalizer databaseKeys = databaseFilter.canonicalizer();
+            if(!databaseFilter.appearsCanonical(databaseKeys == keys ? myKey : databaseKeys.canonicalize(key))){
+                return "Key does not exist!";//the key is in neither file
+            }
+        }
+        try {
             String line;
-            while ((line = br.readLine()) != null) {
-                String[] arrOfStr = line.split(" ", 5);
-                String temp = "";
-                for(int i = 0; i < arrOfStr.length - 1; i++){
-                    temp = temp + arrOfStr[i];
-                }
-                if(temp.equals(myKey)){
-                    return line;
-                }
+            if(databaseIndex != null && databaseIndex.database().equals(database)){
+                line = databaseIndex.find(databaseIndex.canonicalizer() == keys ? myKey : databaseIndex.canonicalizer().canonicalize(key));
+            }else{
+                line = LineScanner.forCurrentThread().find(database, myKey, keys);
+            }
+            if(line != null){
+                return line;
             }
         }catch(IOException e){
             System.out.println("Exception in getFileContents(" + database + "), msg=" + e);
@@ -0,0 +1,84 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * A bloom filter: a set of strings that may answer that a string appears although it was never added
+ * (a false positive), but never that an added string does not appear. Strings are turned into bytes by the
+ * canonicalizer of the filter; membership is case-insensitive unless it is KeyCanonicalizer.CASE_SENSITIVE.
+ */
+
+import java.util.BitSet;
+
+public interface BloomFilter {
+
+    /**
+     *  Add a string to the bloom filter.
+     * @param s a string to be added to the Bloom Filter
+     */
+    void add(String s);
+
+    /**
+     * Check whether a string is stored in the bloom filter or not. This method must be case-insensitive
+     * unless the canonicalizer is case-sensitive.
+     * @param s a string whose membership in the bloom filter is to be checked
+     * @return Returns true if s appears in the filter; otherwise returns false.
+     */
+    boolean appears(String s);
+
+    /**
+     *  Add all strings of keys to the bloom filter.
+     * @param keys the strings to be added to the Bloom Filter
+     */
+    void addAll(String[] keys);
+
+    /**
+     * Check the membership of many strings at once, as appears.
+     * @param keys the strings whose membership in the bloom filter is to be checked
+     * @param out bit i of out is set if keys[i] appears in the filter and cleared otherwise
+     */
+    void appearsAll(String[] keys, BitSet out);
+
+    /**
+     *  Add a key that is already canonical, e.g. the bytes of a lookup key or of the key of a line of a file.
+     * @param key bytes from canonicalizer().canonicalize, fold or lineKey
+     */
+    void addCanonical(byte[] key);
+
+    /**
+     * Check the membership of a key that is already canonical, so that a lookup canonicalizes its key once for
+     * the filter and for the comparison with the file.
+     * @param key bytes from canonicalizer().canonicalize, fold or lineKey
+     * @return Returns true if key appears in the filter; otherwise returns false.
+     */
+    boolean appearsCanonical(byte[] key);
+
+    /**
+     * Get the canonicalizer that turns the strings of add and appears into bytes.
+     * @return the canonicalizer
+     */
+    KeyCanonicalizer canonicalizer();
+
+    /**
+     *  Get the size of the bloom filter (the size of hash tables).
+     * @return the size of the bloom filter filter
+     */
+    int filterSize();
+
+    /**
+     *  Get the number of elements stored in the bloom filter.
+     * @return the number of elements added to the filter
+     */
+    int dataSize();
+
+    /**
+     * Estimate the number of distinct elements stored in the bloom filter from the bits that are set.
+     * @return the estimated number of distinct elements added to the filter
+     */
+    double estimatedCardinality();
+
+    /**
+     * Get the number of hash functions used for the bloom filter.
+     * @return the number of hash functions used for the bloom filter.
+     */
+    int numHashes();
+}
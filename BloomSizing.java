@@ -0,0 +1,213 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class computes the parameters of a bloom filter: the filter size m and the number of hash functions k.
+ * For n elements, a filter of m bits with k hash functions has a false positive rate of about
+ *  f = (1 - e^(-k * n / m))^k,
+ * which is smallest for k = ln2 * m / n, where f = 0.6185^(m / n).
+ * So for a target false positive rate f, the smallest filter has m = -n * ln(f) / (ln2)^2 bits.
+ */
+
+import java.util.List;
+import java.util.function.Predicate;
+
+public class BloomSizing {
+
+    private static final double LN2 = Math.log(2);
+
+    /**
+     * The size and the number of hash functions of a bloom filter.
+     */
+    public static final class Parameters {
+        public final long numElements;//n, the expected number of elements
+        public final long numBits;//m, the size of the filter
+        public final int numHashes;//k, the number of hash functions
+
+        Parameters(long numElements, long numBits, int numHashes) {
+            this.numElements = numElements;
+            this.numBits = numBits;
+            this.numHashes = numHashes;
+        }
+
+        /**
+         * Get the bits per element, rounded up, as expected by the constructors of the filters.
+         * @return the least integer b such that b * n >= m
+         */
+        public int bitsPerElement() {
+            return (int) Math.max(1, (numBits + numElements - 1) / Math.max(1, numElements));
+        }
+
+        /**
+         * Get the false positive rate expected once all n elements are added.
+         * @return the expected false positive rate
+         */
+        public double falsePositiveRate() {
+            return BloomSizing.falsePositiveRate(numBits, numElements, numHashes);
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + numElements + " m=" + numBits + " k=" + numHashes + " fpr=" + falsePositiveRate();
+        }
+    }
+
+    /**
+     * Find the least prime number that is at least as large as the input value n.
+     * The filter size is a prime so that the (a * x + b) % p hash functions are universal.
+     * @param n an input integer value, at most Integer.MAX_VALUE (which is a prime)
+     * @return the least prime that is at least as large as n
+     */
+    public static int leastPrime(int n) {
+        for (int i = Math.max(2, n); ; i++)
+            if (isPrime(i))
+                return i;
+    }
+
+    /**
+     * Check whether an input value n is a prime or not.
+     * @param n an input integer value
+     * @return true if the input value n is a prime; false otherwise.
+     */
+    public static boolean isPrime(int n) {
+        // Corner cases
+        if (n <= 1) return false;
+        if (n <= 3) return true;
+
+        // This is checked so that we can skip middle five numbers in below loop
+        if (n % 2 == 0 || n % 3 == 0) return false;
+        // It uses the fact that a prime (except 2 and 3) is of form
+        // 6k - 1 or 6k + 1 and looks only at divisors of this form.
+        for (long i = 5; i * i <= n; i = i + 6)
+            if (n % i == 0 || n % (i + 2) == 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Get the optimal number of hash functions for a given bits per element: round(ln2 * m / n), at least 1.
+     * @param bitsPerElement m / n
+     * @return the optimal number of hash functions
+     */
+    public static int optimalNumHashes(double bitsPerElement) {
+        return (int) Math.max(1, Math.round(LN2 * bitsPerElement));
+    }
+
+    /**
+     * Get the optimal number of hash functions for a filter of m bits storing n elements.
+     * @param numBits m, the size of the filter
+     * @param numElements n, the number of elements
+     * @return the optimal number of hash functions
+     */
+    public static int optimalNumHashes(long numBits, long numElements) {
+        return optimalNumHashes((double) numBits / Math.max(1, numElements));
+    }
+
+    /**
+     * Get the least number of bits for which n elements have a false positive rate of at most f.
+     * @param numElements n, the number of elements
+     * @param falsePositiveRate f, the target false positive rate, in (0, 1)
+     * @return m = ceil(-n * ln(f) / (ln2)^2)
+     */
+    public static long optimalNumBits(long numElements, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("false positive rate must be in (0, 1): " + falsePositiveRate);
+        return (long) Math.ceil(-Math.max(1, numElements) * Math.log(falsePositiveRate) / (LN2 * LN2));
+    }
+
+    /**
+     * Get the expected false positive rate of a filter.
+     * @param numBits m, the size of the filter
+     * @param numElements n, the number of elements added
+     * @param numHashes k, the number of hash functions
+     * @return (1 - e^(-k * n / m))^k
+     */
+    public static double falsePositiveRate(long numBits, long numElements, int numHashes) {
+        return Math.pow(1 - Math.exp(-(double) numHashes * numElements / numBits), numHashes);
+    }
+
+    /**
+     * Get the parameters of the smallest filter storing n elements with a false positive rate of at most f.
+     * @param numElements n, the expected number of elements
+     * @param falsePositiveRate f, the target false positive rate
+     * @return the optimal m and k
+     */
+    public static Parameters forFalsePositiveRate(long numElements, double falsePositiveRate) {
+        long m = optimalNumBits(numElements, falsePositiveRate);
+        return new Parameters(numElements, m, optimalNumHashes(m, numElements));
+    }
+
+    /**
+     * Get the parameters of the filter with the lowest false positive rate for n elements within a memory budget.
+     * @param numElements n, the expected number of elements
+     * @param numBits m, the memory budget in bits
+     * @return m and the optimal k
+     */
+    public static Parameters forMemoryBudget(long numElements, long numBits) {
+        return new Parameters(numElements, numBits, optimalNumHashes(numBits, numElements));
+    }
+
+    /**
+     * Get the least number of hash functions whose false positive rate is at most maxRate. Fewer hash functions
+     * make appears faster, so this trades the rate slack of a filter larger than needed for probe speed.
+     * @param params the filter parameters; only m and n are used
+     * @param maxRate the highest acceptable false positive rate
+     * @return the parameters with the least such k, or the optimal k if no k reaches maxRate
+     */
+    public static Parameters fewestHashesWithin(Parameters params, double maxRate) {
+        int optimal = optimalNumHashes(params.numBits, params.numElements);
+        for (int k = 1; k < optimal; k++) {
+            if (falsePositiveRate(params.numBits, params.numElements, k) <= maxRate)
+                return new Parameters(params.numElements, params.numBits, k);
+        }
+        return new Parameters(params.numElements, params.numBits, optimal);
+    }
+
+    /**
+     * Get the number of hash functions minimizing the expected cost of a lookup,
+     *  k * hashCost + f(k) * falsePositiveCost,
+     * where a false positive costs a scan of the differential file.
+     * @param params the filter parameters; only m and n are used
+     * @param hashCostNanos the measured cost of one hash function and bit test, see measureHashCost
+     * @param falsePositiveCostNanos the cost of a false positive
+     * @return the parameters with the cheapest k
+     */
+    public static Parameters rebalance(Parameters params, double hashCostNanos, double falsePositiveCostNanos) {
+        int best = 1;
+        double bestCost = Double.MAX_VALUE;
+        int optimal = optimalNumHashes(params.numBits, params.numElements);
+        for (int k = 1; k <= optimal; k++) {//more than the optimal k is both slower and less accurate
+            double cost = k * hashCostNanos + falsePositiveRate(params.numBits, params.numElements, k) * falsePositiveCostNanos;
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = k;
+            }
+        }
+        return new Parameters(params.numElements, params.numBits, best);
+    }
+
+    /**
+     * Measure the cost of one hash function of a filter by timing appears on keys that are in the filter,
+     * so that all numHashes hash functions are evaluated for every key.
+     * @param appears the appears method of the filter
+     * @param keys keys that were added to the filter
+     * @param numHashes the number of hash functions of the filter
+     * @return the average time of one hash function and bit test, in ns
+     */
+    public static double measureHashCost(Predicate<String> appears, List<String> keys, int numHashes) {
+        int found = 0;
+        for (int round = 0; round < 3; round++) {//the first rounds warm up the JIT
+            for (String key : keys)
+                if (appears.test(key))
+                    found++;
+        }
+        long start = System.nanoTime();
+        for (String key : keys)
+            if (appears.test(key))
+                found++;
+        long elapsed = System.nanoTime() - start;
+        if (found == 0)
+            System.out.println("measureHashCost: no key appears in the filter");
+        return (double) elapsed / Math.max(1, keys.size()) / Math.max(1, numHashes);
+    }
+}
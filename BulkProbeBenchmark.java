@@ -0,0 +1,68 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This program compares the throughput of probing keys one at a time with appears against probing them in bulk
+ * with appearsAll, for the three bloom filters. Half of the probed keys are in the filter and half are not.
+ *
+ * Usage: java BulkProbeBenchmark [numKeys] [bitsPerElement]
+ */
+
+import java.util.BitSet;
+
+public class BulkProbeBenchmark {
+
+    private static final int ROUNDS = 5;//the first rounds warm up the JIT, the last one is reported
+
+    public static void main(String[] args) {
+        int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int bitsPerElement = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        FalsePositives generator = new FalsePositives(numKeys);
+        char[] buffer = new char[16];
+        String[] members = new String[numKeys];
+        String[] probes = new String[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            members[i] = generator.string(i, buffer);
+            probes[i] = (i % 2 == 0) ? members[i] : generator.string(numKeys + i, buffer);
+        }
+
+        String[] names = {"FNV", "Murmur", "Ran"};
+        BloomFilter[] filters = {
+            new BloomFilterFNV(numKeys, bitsPerElement),
+            new BloomFilterMurmur(numKeys, bitsPerElement),
+            new BloomFilterRan(numKeys, bitsPerElement),
+        };
+        for (int f = 0; f < filters.length; f++) {
+            filters[f].addAll(members);
+            report(names[f], filters[f], probes);
+        }
+    }
+
+    /**
+     * Time both probe methods and print their throughput. Both must find the same number of keys.
+     */
+    private static void report(String name, BloomFilter filter, String[] keys) {
+        BitSet out = new BitSet(keys.length);
+        long perKeyNanos = 0;
+        long bulkNanos = 0;
+        int perKeyFound = 0;
+        int bulkFound = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            perKeyFound = 0;
+            for (String key : keys)
+                if (filter.appears(key))
+                    perKeyFound++;
+            perKeyNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            filter.appearsAll(keys, out);
+            bulkFound = out.cardinality();
+            bulkNanos = System.nanoTime() - start;
+        }
+        if (perKeyFound != bulkFound)
+            System.out.println(name + ": appears found " + perKeyFound + " keys but appearsAll found " + bulkFound);
+        System.out.printf("%-6s appears: %.2f Mkeys/s   appearsAll: %.2f Mkeys/s   (%d of %d keys found)%n", name,
+                keys.length * 1e3 / perKeyNanos, keys.length * 1e3 / bulkNanos, bulkFound, keys.length);
+    }
+}
@@ -0,0 +1,156 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class writes the bits of a filter in the smaller of two encodings:
+ *  - RAW: the 64-bit words of the bit set;
+ *  - ELIAS_FANO: the positions of the n bits set among m, each split into l = floor(log2(m / n)) low bits,
+ *    stored as they are, and high bits, stored in unary as gaps in a bit array of n + (m >> l) + 1 bits. That is
+ *    about n * (2 + log2(m / n)) bits instead of m.
+ * A filter at its designed capacity has about half of its bits set and does not compress (each bit carries
+ * about one bit of information), so it is written RAW. A filter that is still sparse, such as the filter of a
+ * differential file sized for a day of records early in the day, is much smaller in ELIAS_FANO.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+public final class CompactBits {
+
+    static final byte RAW = 1;
+    static final byte ELIAS_FANO = 2;
+
+    private CompactBits() {
+    }
+
+    /**
+     * Write the bits [0, size) of bits in the smaller encoding.
+     * @param bits the bit set, with no bit set at size or above, not changed during the write
+     * @param size the number of bits, m
+     * @param out the output
+     * @throws IOException if out cannot be written
+     */
+    public static void write(BitSet bits, int size, DataOutputStream out) throws IOException {
+        int n = bits.cardinality();
+        int l = lowBits(size, n);
+        long rawWords = (size + 63L) / 64;
+        long efWords = words((long) n * l) + words(upperSize(size, n, l));
+        if (n == 0 || efWords >= rawWords) {
+            long[] words = bits.toLongArray();
+            out.writeByte(RAW);
+            out.writeInt(words.length);
+            for (long word : words)
+                out.writeLong(word);
+            return;
+        }
+        long[] lower = new long[(int) words((long) n * l)];
+        long[] upper = new long[(int) words(upperSize(size, n, l))];
+        long lowMask = (1L << l) - 1;
+        int i = 0;
+        for (int x = bits.nextSetBit(0); x >= 0; x = bits.nextSetBit(x + 1), i++) {
+            setBits(lower, (long) i * l, l, x & lowMask);
+            long high = (long) (x >>> l) + i;//the ith high part, written in unary after the previous one
+            upper[(int) (high >>> 6)] |= 1L << high;
+        }
+        out.writeByte(ELIAS_FANO);
+        out.writeInt(n);
+        out.writeByte(l);
+        for (long word : lower)
+            out.writeLong(word);
+        for (long word : upper)
+            out.writeLong(word);
+    }
+
+    /**
+     * Read bits written by write.
+     * @param in the input
+     * @param size the number of bits, m, given to write
+     * @return the bit set, with the capacity of size bits
+     * @throws IOException if in cannot be read or does not hold bits of that size
+     */
+    public static BitSet read(DataInputStream in, int size) throws IOException {
+        BitSet bits = new BitSet(size);
+        byte encoding = in.readByte();
+        if (encoding == RAW) {
+            int numWords = in.readInt();
+            if (numWords < 0 || numWords > (size + 63) / 64)
+                throw new IOException(numWords + " words do not fit " + size + " bits");
+            long[] words = new long[numWords];
+            for (int w = 0; w < numWords; w++)
+                words[w] = in.readLong();
+            bits.or(BitSet.valueOf(words));//bits keeps the capacity of size bits
+            return bits;
+        }
+        if (encoding != ELIAS_FANO)
+            throw new IOException("unknown bit encoding " + encoding);
+        int n = in.readInt();
+        int l = in.readUnsignedByte();
+        if (n < 0 || n > size || l != lowBits(size, n))
+            throw new IOException(n + " positions with " + l + " low bits do not fit " + size + " bits");
+        long[] lower = new long[(int) words((long) n * l)];
+        for (int w = 0; w < lower.length; w++)
+            lower[w] = in.readLong();
+        long[] upper = new long[(int) words(upperSize(size, n, l))];
+        for (int w = 0; w < upper.length; w++)
+            upper[w] = in.readLong();
+        int i = 0;
+        for (int w = 0; w < upper.length && i < n; w++) {
+            for (long word = upper[w]; word != 0 && i < n; word &= word - 1, i++) {
+                long high = (w * 64L + Long.numberOfTrailingZeros(word)) - i;
+                long x = (high << l) | getBits(lower, (long) i * l, l);
+                if (x >= size)
+                    throw new IOException("bit " + x + " does not fit " + size + " bits");
+                bits.set((int) x);
+            }
+        }
+        if (i < n)
+            throw new IOException("only " + i + " of " + n + " positions");
+        return bits;
+    }
+
+    /**
+     * Get the number of low bits of a position, floor(log2(size / n)), which minimizes the size of the encoding.
+     */
+    private static int lowBits(int size, int n) {
+        if (n == 0 || size <= n)
+            return 0;
+        return 63 - Long.numberOfLeadingZeros(size / n);
+    }
+
+    private static long upperSize(int size, int n, int l) {
+        return n + ((long) size >>> l) + 1;
+    }
+
+    private static long words(long numBits) {
+        return (numBits + 63) / 64;
+    }
+
+    /**
+     * Write the width low bits of value at bit position pos of words.
+     */
+    private static void setBits(long[] words, long pos, int width, long value) {
+        if (width == 0)
+            return;
+        int w = (int) (pos >>> 6);
+        int shift = (int) (pos & 63);
+        words[w] |= value << shift;
+        if (shift + width > 64)
+            words[w + 1] |= value >>> (64 - shift);
+    }
+
+    /**
+     * Read width bits at bit position pos of words.
+     */
+    private static long getBits(long[] words, long pos, int width) {
+        if (width == 0)
+            return 0;
+        int w = (int) (pos >>> 6);
+        int shift = (int) (pos & 63);
+        long value = words[w] >>> shift;
+        if (shift + width > 64)
+            value |= words[w + 1] << (64 - shift);
+        return value & ((1L << width) - 1);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class implements a bloom filter that keys can be added to while other threads probe it, without a lock.
+ * The bits are the words of a long[], set with an atomic or (VarHandle.getAndBitwiseOr) and read with acquire
+ * loads. Bits are only ever set, never cleared, so a probe sees every key whose add finished before it started;
+ * a key added concurrently appears either not at all or fully, since its k bits are set before add returns.
+ * There is no union, intersect or serialization: snapshot copies the filter into a HashedBloomFilter, with the
+ * same hash functions, for those (see DifferentialTailer, which saves its checkpoints that way).
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ConcurrentBloomFilter implements BloomFilter {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;//bit i of the filter is bit i % 64 of words[i / 64]
+    private final HashStrategy strategy;
+    private final KeyCanonicalizer canonicalizer;
+    private final int filterSize;
+    private final int k;
+    private final AtomicInteger numOfElmntsAdded = new AtomicInteger();
+
+    /**
+     * Creates an empty Bloom filter whose size and hash functions are those of strategy.
+     * @param strategy the k hash functions
+     * @param canonicalizer turns the strings into the hashed bytes
+     */
+    public ConcurrentBloomFilter(HashStrategy strategy, KeyCanonicalizer canonicalizer) {
+        this.strategy = strategy;
+        this.canonicalizer = canonicalizer;
+        filterSize = strategy.filterSize();
+        k = strategy.numHashes();
+        words = new long[(filterSize + 63) / 64];
+    }
+
+    /**
+     * Copy a filter, for example one read from a checkpoint, so that keys can be added to the copy concurrently.
+     * @param filter the filter to copy
+     * @return a filter with the same hash functions, canonicalizer, bits and dataSize
+     */
+    public static ConcurrentBloomFilter copyOf(HashedBloomFilter filter) {
+        ConcurrentBloomFilter copy = new ConcurrentBloomFilter(filter.strategy(), filter.canonicalizer());
+        long[] bits = filter.words();
+        System.arraycopy(bits, 0, copy.words, 0, bits.length);
+        copy.numOfElmntsAdded.set(filter.dataSize());
+        return copy;
+    }
+
+    /**
+     * Copy this filter into a HashedBloomFilter, to be written or combined with other filters. Keys added
+     * during the copy may or may not be in it; every key added before it started is.
+     * @return a filter with the same hash functions, canonicalizer, bits and dataSize
+     */
+    public HashedBloomFilter snapshot() {
+        int dataSize = numOfElmntsAdded.get();
+        long[] copy = new long[words.length];
+        for (int w = 0; w < words.length; w++)
+            copy[w] = (long) WORDS.getAcquire(words, w);
+        return HashedBloomFilter.of(strategy, canonicalizer, copy, dataSize);
+    }
+
+    @Override
+    public void add(String s) {
+        addCanonical(canonicalizer.fold(s));
+    }
+
+    @Override
+    public void addCanonical(byte[] key) {
+        for (int i = 0; i < k; i++) {
+            int bit = strategy.index(i, key, 0, key.length);
+            WORDS.getAndBitwiseOr(words, bit >>> 6, 1L << bit);
+        }
+        numOfElmntsAdded.incrementAndGet();
+    }
+
+    @Override
+    public void addAll(String[] keys) {
+        for (String key : keys)
+            add(key);
+    }
+
+    @Override
+    public boolean appears(String s) {
+        return appearsCanonical(canonicalizer.fold(s));
+    }
+
+    @Override
+    public boolean appearsCanonical(byte[] key) {
+        for (int i = 0; i < k; i++) {
+            int bit = strategy.index(i, key, 0, key.length);
+            if (((long) WORDS.getAcquire(words, bit >>> 6) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void appearsAll(String[] keys, BitSet out) {
+        for (int i = 0; i < keys.length; i++)
+            out.set(i, appears(keys[i]));
+    }
+
+    @Override
+    public KeyCanonicalizer canonicalizer() {
+        return canonicalizer;
+    }
+
+    @Override
+    public int filterSize() {
+        return filterSize;
+    }
+
+    @Override
+    public int dataSize() {
+        return numOfElmntsAdded.get();
+    }
+
+    @Override
+    public int numHashes() {
+        return k;
+    }
+
+    /**
+     * Estimate the number of distinct elements added to the filter from the number X of bits set, as
+     * HashedBloomFilter.estimatedCardinality.
+     * @return the estimated number of distinct elements, or infinity if every bit is set
+     */
+    @Override
+    public double estimatedCardinality() {
+        long bitsSet = 0;
+        for (int w = 0; w < words.length; w++)
+            bitsSet += Long.bitCount((long) WORDS.getAcquire(words, w));
+        if (bitsSet >= filterSize)
+            return Double.POSITIVE_INFINITY;
+        return -((double) filterSize / k) * Math.log(1 - (double) bitsSet / filterSize);
+    }
+}
@@ -0,0 +1,187 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class builds and persists a bloom filter of the keys of the database, the second level of
+ * BloomDifferential (see useDatabaseFilter): a key that appears in neither the filter of the differential file
+ * nor this one is rejected without reading either file, and only the keys that appear in it cost a database scan.
+ *
+ * The database is split into one part per thread at line boundaries (see LineIndex); every thread scans its
+ * part with its own LineScanner into its own filter over the same hash functions, and the filters are or-ed
+ * together (HashedBloomFilter.union), which gives exactly the filter of all the keys.
+ * The filter is saved with the length and the last modification time of the database, and rebuilt by open
+ * when the database has changed:
+ *  MAGIC "DBF2", the length and the last modification time of the database, then HashedBloomFilter.writeTo.
+ *
+ * Usage: java DatabaseFilter [database] [false positive rate]
+ * prints the memory footprint of the filter for the database and for 12.6M keys at several bits per element,
+ * and builds the filter of the database.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public final class DatabaseFilter {
+
+    static final int MAGIC = 0x44424632;//"DBF2"; DBF1 filters had no FORMAT
+    static final long FULL_DATABASE_KEYS = 12632196;//the keys of the full data set
+
+    private DatabaseFilter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String database = args.length > 0 ? args[0] : "database.txt";
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 0.01;
+        long numKeys;
+        try (LineIndex index = LineIndex.open(database)) {
+            numKeys = index.numLines();
+        }
+        int[] bitsPerElement = {4, 6, 8, 10, 12, 16};
+        System.out.printf("%-16s %4s %12s %14s %14s%n", "bits per element", "k", "fp rate", database, FULL_DATABASE_KEYS + " keys");
+        for (int bpe : bitsPerElement) {
+            int k = BloomSizing.optimalNumHashes(bpe);
+            System.out.printf("%-16d %4d %12.6f %11.2f MB %11.2f MB%n", bpe, k,
+                    BloomSizing.falsePositiveRate((long) bpe * numKeys, numKeys, k),
+                    footprintBytes(numKeys, bpe) / 1e6, footprintBytes(FULL_DATABASE_KEYS, bpe) / 1e6);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        HashedBloomFilter filter = build(database, rate, KeyCanonicalizer.CASE_SENSITIVE, threads);
+        System.out.printf("Built the filter of %d keys of %s at rate %s with %d threads in %.1f ms: %d bits, %d hash functions, %.2f MB%n",
+                numKeys, database, rate, threads, (System.nanoTime() - start) / 1e6, filter.filterSize(), filter.numHashes(),
+                (filter.filterSize() + 7) / 8 / 1e6);
+    }
+
+    /**
+     * Get the memory of the bits of a filter of numKeys keys, rounded up to whole 64-bit words as in a BitSet.
+     * @param numKeys the number of keys
+     * @param bitsPerElement the bits per key
+     * @return the bytes of the filter
+     */
+    public static long footprintBytes(long numKeys, int bitsPerElement) {
+        return (numKeys * bitsPerElement + 63) / 64 * 8;
+    }
+
+    /**
+     * Load the filter of a database from filterFile if it was saved for the current database, otherwise build it
+     * and save it there.
+     * @param database the name of the database
+     * @param filterFile the file of the filter
+     * @param falsePositiveRate the target false positive rate of a filter that is built
+     * @param canonicalizer the canonicalizer of a filter that is built, that of the filter of the differential file
+     * @return the filter of the keys of the database
+     * @throws IOException if the database cannot be read
+     */
+    public static HashedBloomFilter open(String database, String filterFile, double falsePositiveRate, KeyCanonicalizer canonicalizer) throws IOException {
+        if (new File(filterFile).exists()) {
+            try {
+                HashedBloomFilter filter = load(database, filterFile);
+                if (filter.canonicalizer() == canonicalizer)
+                    return filter;
+            } catch (IOException e) {
+                System.out.println("Exception in getFileContents(" + filterFile + "), msg=" + e + ", rebuilding it");
+            }
+        }
+        HashedBloomFilter filter = build(database, falsePositiveRate, canonicalizer, Runtime.getRuntime().availableProcessors());
+        try {
+            save(filter, database, filterFile);
+        } catch (IOException e) {
+            System.out.println("Exception in getFileContents(" + filterFile + "), msg=" + e);
+        }
+        return filter;
+    }
+
+    /**
+     * Build the filter of the keys of a database in one parallel pass.
+     * @param database the name of the database
+     * @param falsePositiveRate the target false positive rate
+     * @param canonicalizer turns the keys into the hashed bytes
+     * @param numThreads the number of threads, each scanning one part of the database
+     * @return the filter of the keys of the database
+     * @throws IOException if the database cannot be read
+     */
+    public static HashedBloomFilter build(String database, double falsePositiveRate, KeyCanonicalizer canonicalizer, int numThreads) throws IOException {
+        try (LineIndex index = LineIndex.open(database)) {
+            int numKeys = index.numLines();
+            BloomSizing.Parameters params = BloomSizing.forFalsePositiveRate(Math.max(1, numKeys), falsePositiveRate);
+            HashStrategy strategy = new FNVHashStrategy(BloomSizing.leastPrime((int) params.numBits), params.numHashes);
+            int parts = Math.max(1, numThreads);
+            ExecutorService pool = Executors.newFixedThreadPool(parts);
+            try {
+                List<Future<HashedBloomFilter>> filters = new ArrayList<Future<HashedBloomFilter>>();
+                for (int p = 0; p < parts; p++) {
+                    long start = index.offset((int) ((long) numKeys * p / parts));
+                    long end = index.offset((int) ((long) numKeys * (p + 1) / parts));
+                    filters.add(pool.submit(() -> {
+                        HashedBloomFilter part = new HashedBloomFilter(strategy, canonicalizer);
+                        try (LineScanner scanner = new LineScanner(LineScanner.DEFAULT_BUFFER_SIZE)) {
+                            scanner.scan(database, start, end, (buf, from, to) -> {
+                                part.addCanonical(canonicalizer.lineKey(buf, from, to));
+                                return true;
+                            });
+                        }
+                        return part;
+                    }));
+                }
+                HashedBloomFilter filter = filters.get(0).get();
+                for (int p = 1; p < parts; p++)
+                    filter.union(filters.get(p).get());
+                return filter;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("building the filter of " + database + " interrupted");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Save the filter of a database, to be loaded by load while the database does not change.
+     * @param filter the filter of the keys of the database
+     * @param database the name of the database
+     * @param filterFile the file of the filter
+     * @throws IOException if the filter cannot be written
+     */
+    public static void save(HashedBloomFilter filter, String database, String filterFile) throws IOException {
+        File file = new File(database);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filterFile)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            filter.writeTo(out);
+        }
+    }
+
+    /**
+     * Load a filter saved by save.
+     * @param database the name of the database
+     * @param filterFile the file of the filter
+     * @return the filter of the keys of the database
+     * @throws IOException if the filter cannot be read, or the database has changed since it was saved
+     */
+    public static HashedBloomFilter load(String database, String filterFile) throws IOException {
+        File file = new File(database);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filterFile)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(filterFile + " is not a database filter of this version");
+            if (in.readLong() != file.length() || in.readLong() != file.lastModified())
+                throw new IOException(database + " has changed since " + filterFile + " was saved");
+            return HashedBloomFilter.readFrom(in);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class keeps the bloom filter of a BloomDifferential up to date while records are appended to the
+ * differential file. It remembers the byte offset up to which the file has been read, and when the file grows
+ * it reads only the new complete lines and adds their keys to the live filter.
+ *
+ * The keys are taken from the bytes of the lines with the canonicalizer of the filter (see
+ * KeyCanonicalizer.lineKey), as BloomDifferential.createFilter does, so a key appended to the file is found
+ * exactly as if the filter had been created from the whole file.
+ * The live filter is a ConcurrentBloomFilter, whose bits are set atomically and only ever set, so keys are
+ * added without pausing the lookups and without a lock. A record appended to the file is found through the
+ * filter at the latest one poll interval later.
+ *
+ * The filter and the offset are saved together in a checkpoint file, so after a restart only the records
+ * appended since the last checkpoint are read. A checkpoint written with another canonicalizer is not used,
+ * and the file is read again.
+ *
+ * Usage: java DifferentialTailer differential.txt checkpoint.bin [capacity] [seconds]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class DifferentialTailer implements AutoCloseable {
+
+    static final int MAGIC = 0x54414c32;//"TAL2", the first int of a checkpoint file; TAL1 filters had no canonicalizer mode
+    private static final int BATCH = 4096;//keys added to the filter before the offset moves
+    private static final int READ_SIZE = 1 << 16;
+
+    private final String diffFile;
+    private final String checkpointFile;
+    private final int capacity;//the number of records the filter was sized for
+    private final BloomDifferential differential;
+    private final ConcurrentBloomFilter filter;
+
+    private volatile long offset;//every line before this byte offset is in the filter
+    private long checkpointedOffset = -1;
+    private boolean warnedCapacity;
+    private volatile boolean running;
+    private Thread thread;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java DifferentialTailer differential.txt checkpoint.bin [capacity] [seconds]");
+            return;
+        }
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+        try (DifferentialTailer tailer = new DifferentialTailer(args[0], args[1], capacity, 0.01)) {
+            tailer.start(100, 10000);
+            for (int s = 0; s < seconds; s++) {
+                Thread.sleep(1000);
+                System.out.println("offset " + tailer.offset() + ", " + tailer.differential().getFilter().dataSize() + " keys");
+            }
+        }
+    }
+
+    /**
+     * Open the checkpoint if it exists, otherwise create an empty filter, and read the differential file
+     * from the checkpointed offset to its end.
+     * @param diffFile the name of the differential file
+     * @param checkpointFile the name of the file where the filter and the offset are saved
+     * @param capacity the number of records the filter is sized for, when no checkpoint exists
+     * @param falsePositiveRate the target false positive rate at capacity records
+     */
+    public DifferentialTailer(String diffFile, String checkpointFile, int capacity, double falsePositiveRate) {
+        this(diffFile, checkpointFile, capacity, falsePositiveRate, KeyCanonicalizer.CASE_SENSITIVE);
+    }
+
+    /**
+     * Open the checkpoint if it exists and was written with canonicalizer, otherwise create an empty filter, and
+     * read the differential file from the checkpointed offset to its end.
+     * @param diffFile the name of the differential file
+     * @param checkpointFile the name of the file where the filter and the offset are saved
+     * @param capacity the number of records the filter is sized for, when no checkpoint exists
+     * @param falsePositiveRate the target false positive rate at capacity records
+     * @param canonicalizer the canonicalizer of the keys, as for the DatabaseFilter or StaticDatabaseIndex used
+     *                      with the differential
+     */
+    public DifferentialTailer(String diffFile, String checkpointFile, int capacity, double falsePositiveRate, KeyCanonicalizer canonicalizer) {
+        this.diffFile = diffFile;
+        this.checkpointFile = checkpointFile;
+        this.capacity = capacity;
+        differential = new BloomDifferential(canonicalizer);
+        HashedBloomFilter restored = null;
+        if (new File(checkpointFile).exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+                if (in.readInt() != MAGIC)
+                    throw new IOException("not a checkpoint file of this version");
+                long savedOffset = in.readLong();
+                restored = HashedBloomFilter.readFrom(in);
+                if (restored.canonicalizer() != canonicalizer)
+                    throw new IOException("the checkpoint has " + restored.canonicalizer().mode() + " keys, not " + canonicalizer.mode());
+                offset = savedOffset;
+                checkpointedOffset = savedOffset;
+            } catch (IOException e) {
+                System.out.println("Exception in getFileContents(" + checkpointFile + "), msg=" + e + ", rescanning " + diffFile);
+                restored = null;
+                offset = 0;
+                checkpointedOffset = -1;
+            }
+        }
+        if (restored == null) {
+            BloomSizing.Parameters params = BloomSizing.forFalsePositiveRate(capacity, falsePositiveRate);
+            restored = new BloomFilterFNV(capacity, params.bitsPerElement(), params.numHashes, canonicalizer);
+        }
+        filter = ConcurrentBloomFilter.copyOf(restored);
+        differential.useFilter(filter);
+        catchUp();
+    }
+
+    /**
+     * Get the BloomDifferential whose filter this tailer maintains.
+     * @return the BloomDifferential, to be used with retrieveRecord
+     */
+    public BloomDifferential differential() {
+        return differential;
+    }
+
+    /**
+     * Get the offset up to which the differential file is in the filter.
+     * @return the byte offset of the first line not read yet
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * Add the keys of the complete lines appended to the differential file since the last call.
+     * A last line without its line break is left for the next call, since it may still be being written.
+     * @return the number of keys added
+     */
+    public synchronized int catchUp() {
+        int added = 0;
+        try (FileChannel channel = FileChannel.open(Paths.get(diffFile), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {//the file was replaced by a shorter one; the old keys cannot be removed
+                System.out.println(diffFile + " shrank from " + offset + " to " + size + " bytes, reading it again");
+                offset = 0;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+            byte[] carry = new byte[0];//the start of a line that continues in the next read
+            List<byte[]> keys = new ArrayList<byte[]>(BATCH);
+            long position = offset;
+            long lineStart = offset;
+            while (position < size) {
+                buffer.clear();
+                int n = channel.read(buffer, position);
+                if (n <= 0)
+                    break;
+                byte[] bytes = buffer.array();
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (bytes[i] != '\n')
+                        continue;
+                    keys.add(lineKey(carry, bytes, start, i));
+                    carry = new byte[0];
+                    start = i + 1;
+                    lineStart = position + start;
+                    if (keys.size() == BATCH) {
+                        added += publish(keys, lineStart);
+                    }
+                }
+                byte[] rest = new byte[carry.length + n - start];
+                System.arraycopy(carry, 0, rest, 0, carry.length);
+                System.arraycopy(bytes, start, rest, carry.length, n - start);
+                carry = rest;
+                position += n;
+            }
+            added += publish(keys, lineStart);
+        } catch (IOException e) {
+            System.out.println("Exception in getFileContents(" + diffFile + "), msg=" + e);
+        }
+        if (!warnedCapacity && filter.dataSize() > capacity) {
+            warnedCapacity = true;
+            System.out.println(diffFile + " has more than " + capacity + " records, the false positive rate rises to "
+                    + BloomSizing.falsePositiveRate(filter.filterSize(), filter.dataSize(), filter.numHashes()));
+        }
+        return added;
+    }
+
+    /**
+     * Add the keys to the filter, then move the offset past their lines.
+     */
+    private int publish(List<byte[]> keys, long newOffset) {
+        int count = keys.size();
+        for (byte[] key : keys)
+            filter.addCanonical(key);
+        keys.clear();
+        offset = newOffset;
+        return count;
+    }
+
+    /**
+     * Get the canonical key of a line from its bytes, the line being carry followed by bytes[start, end), without
+     * its '\r' if it ends with "\r\n".
+     */
+    private byte[] lineKey(byte[] carry, byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r')
+            end--;
+        else if (end == start && carry.length > 0 && carry[carry.length - 1] == '\r')
+            carry = Arrays.copyOf(carry, carry.length - 1);
+        KeyCanonicalizer keys = filter.canonicalizer();
+        if (carry.length == 0)
+            return keys.lineKey(ByteBuffer.wrap(bytes), start, end);
+        byte[] line = new byte[carry.length + end - start];
+        System.arraycopy(carry, 0, line, 0, carry.length);
+        System.arraycopy(bytes, start, line, carry.length, end - start);
+        return keys.lineKey(ByteBuffer.wrap(line), 0, line.length);
+    }
+
+    /**
+     * Save the filter and the offset, if the offset moved since the last checkpoint. The checkpoint is written
+     * to a temporary file first and then renamed, so a crash leaves either the old or the new checkpoint.
+     */
+    public synchronized void checkpoint() {
+        if (offset == checkpointedOffset)
+            return;
+        Path target = Paths.get(checkpointFile);
+        Path temp = Paths.get(checkpointFile + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile()), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(offset);
+            filter.snapshot().writeTo(out);//has every key before offset, since the offset moves after the keys are added
+        } catch (IOException e) {
+            System.out.println("Exception in checkpoint(" + checkpointFile + "), msg=" + e);
+            return;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpointedOffset = offset;
+        } catch (IOException e) {
+            System.out.println("Exception in checkpoint(" + checkpointFile + "), msg=" + e);
+        }
+    }
+
+    /**
+     * Start a thread that waits for changes of the differential file and adds the new records.
+     * The directory of the file is watched with a WatchService; the file is also checked every pollMillis,
+     * since some file systems do not report changes.
+     * @param pollMillis the longest time between two checks of the file
+     * @param checkpointMillis the least time between two checkpoints
+     */
+    public synchronized void start(long pollMillis, long checkpointMillis) {
+        if (running)
+            return;
+        running = true;
+        thread = new Thread(() -> run(pollMillis, checkpointMillis), "tail " + diffFile);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(long pollMillis, long checkpointMillis) {
+        WatchService watcher = null;
+        try {
+            Path dir = Paths.get(diffFile).toAbsolutePath().getParent();
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.out.println("Exception in watching(" + diffFile + "), msg=" + e + ", polling only");
+            watcher = null;
+        }
+        long lastCheckpoint = System.nanoTime();
+        try {
+            while (running) {
+                if (watcher != null) {
+                    WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();//the events only wake this thread; the file size tells what is new
+                        key.reset();
+                    }
+                } else {
+                    Thread.sleep(pollMillis);
+                }
+                catchUp();
+                if (System.nanoTime() - lastCheckpoint >= TimeUnit.MILLISECONDS.toNanos(checkpointMillis)) {
+                    checkpoint();
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                if (watcher != null)
+                    watcher.close();
+            } catch (IOException e) {
+                System.out.println("Exception in watching(" + diffFile + "), msg=" + e);
+            }
+        }
+    }
+
+    /**
+     * Stop the thread, read the records appended last and save a checkpoint.
+     */
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        catchUp();
+        checkpoint();
+    }
+
+}
@@ -12,12 +12,12 @@
  * Mode 3: select a random key that is not in the differential file but is in the database
  * 
  * The average time difference of the two methods over 10 experiments is reported.
+ * The keys are sampled through a LineIndex of each key file, which reads a random line directly and gives the
+ * number of lines of the files, so the numbers of items do not have to be known.
+ * See LookupBenchmark for latency percentiles and throughput with a warmup phase.
  */
 
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Random;
 
@@ -29,111 +29,117 @@ public class EmpericalComparison {
     	int numExperiments = 10;
     	int bitsPerElement = 8;
     	String differentialFile = "differential.txt"; 
-    	int numItemsInDiffFile = 1262147;
     	String keysOfDatabase = "keysOfDatabase.txt";
        	String database  = "database.txt";
-       	int numItemsInDatabase = 12632196;
        	String subsetFile = "subset.txt"; //this is a sub collection of entries that are in database but not in differential file
-       	int numItemsInSubsetFile = 722;
         EmpericalComparison myEmperor = new EmpericalComparison();
-        for(int mode = 1; mode <= 3; mode++ )
-        {
-            myEmperor.startEmpiricalExp(numExperiments, mode, differentialFile, numItemsInDiffFile, bitsPerElement, keysOfDatabase, database, numItemsInDatabase, subsetFile, numItemsInSubsetFile);
+        try (LineIndex diffIndex = LineIndex.open(differentialFile);
+             LineIndex keysIndex = LineIndex.open(keysOfDatabase);
+             LineIndex subsetIndex = LineIndex.open(subsetFile)) {
+            System.out.println(differentialFile + ": " + diffIndex.numLines() + " items, " + keysOfDatabase + ": "
+                    + keysIndex.numLines() + " items, " + subsetFile + ": " + subsetIndex.numLines() + " items");
+            //The filter only depends on the differential file, so it is created once for all modes
+            BloomDifferential myBloom = new BloomDifferential();
+            myBloom.createFilter(differentialFile, diffIndex.numLines(), bitsPerElement);
+            LineIndex[] keysOfMode = {keysIndex, diffIndex, subsetIndex};
+            for(int mode = 1; mode <= 3; mode++ )
+            {
+                myEmperor.startEmpiricalExp(myBloom, numExperiments, mode, differentialFile, database, keysOfMode[mode - 1]);
+            }
+        }catch(IOException e){
+            System.out.println("Exception in getFileContents(" + differentialFile + "), msg=" + e);
         }
     }
 
 /**
  * 
  * @param numExperiments  number of times the experiment is conducted
+ * @param mode the mode, which selects the file of the keys
  * @param diffFile name of the differential file
- * @param numItemsInDiffFile number of entries/items in differential file
  * @param bitsPerElement bits per element used to generate the bloom filter
+ * @param keysOfDatabase name of the file of the keys of the database, used in mode 1
  * @param database name of the database file
- * @param numItemsInDatabase number of entries/items in database file
+ * @param subsetFile name of the file of records in the database but not in the differential file, used in mode 3
  */
-    public void startEmpiricalExp(int numExperiments, int mode, String diffFile, int numItemsInDiffFile, int bitsPerElement, String keysOfDatabase, String database, int numItemsInDatabase, String subsetFile, int numItemsInSubsetFile){
-       //pre-processing
-        //Create and store the keys in differential file into the BloomDifferential to be used for the experiment
-        BloomDifferential myBloom = new BloomDifferential();
-        myBloom.createFilter(diffFile, numItemsInDiffFile, bitsPerElement);
+    public void startEmpiricalExp(int numExperiments, int mode, String diffFile, int bitsPerElement, String keysOfDatabase, String database, String subsetFile){
+        String keySelectedFromFile = mode == 1 ? keysOfDatabase : mode == 2 ? diffFile : subsetFile;
+        try (LineIndex diffIndex = LineIndex.open(diffFile); LineIndex keys = LineIndex.open(keySelectedFromFile)) {
+            //pre-processing
+            //Create and store the keys in differential file into the BloomDifferential to be used for the experiment
+            BloomDifferential myBloom = new BloomDifferential();
+            myBloom.createFilter(diffFile, diffIndex.numLines(), bitsPerElement);
+            startEmpiricalExp(myBloom, numExperiments, mode, diffFile, database, keys);
+        }catch(IOException e){
+            System.out.println("Exception in getFileContents(" + keySelectedFromFile + "), msg=" + e);
+        }
+    }
+
+/**
+ * Same as above, but uses a BloomDifferential whose filter has already been created from diffFile.
+ * Times are measured with System.nanoTime() and reported in ms.
+ * 
+ * @param myBloom a BloomDifferential whose filter stores the keys of diffFile
+ * @param numExperiments  number of times the experiment is conducted
+ * @param mode the mode, only printed
+ * @param diffFile name of the differential file
+ * @param database name of the database file
+ * @param keys the index of the file whose keys are looked up in this mode
+ */
+    public void startEmpiricalExp(BloomDifferential myBloom, int numExperiments, int mode, String diffFile, String database, LineIndex keys){
         //Now create and store the NaiveDifferential to be used for the experiment
         NaiveDifferential myNaive = new NaiveDifferential();
        
         long bloomTime  = 0;
         long naiveTime = 0;
         String key="";//This will be the key that will be searched in BloomDiffernetial and NaiveDifferential
-        String keySelectedFromFile = "";
-        int numItemsInFile = 0;
+        Random rand = new Random();
         for(int i = 0; i < numExperiments; i++){
             //Generate Key
-        	if(mode == 1)            // Mode 1: select a random Key from  keysOfDatabase
-        	{
-        		keySelectedFromFile = keysOfDatabase;
-                numItemsInFile = numItemsInDatabase;        		
-        	}	
-        	else if(mode == 2)   //Mode 2: select a random key from the differential file
-        	{
-        		keySelectedFromFile = diffFile;
-        		numItemsInFile = numItemsInDiffFile;
-        	}
-        	else if(mode == 3) //Mode 3: select a random key that is not in the differential file but is in the database
-        	{
-        		keySelectedFromFile = subsetFile;
-        		numItemsInFile = numItemsInSubsetFile;
-        	}
-        	key = generateRandomKey(keySelectedFromFile, numItemsInFile);
+        	key = generateRandomKey(keys, rand);
         	
             long startTime;
             long endTime;
-            System.out.println("*** Bloom Differential Experiment: " + i + " ***" );
             //Experiment for BloomDifferential==================================
-            startTime = System.currentTimeMillis();
+            startTime = System.nanoTime();
             myBloom.retrieveRecord(key, diffFile,database);
-            endTime   = System.currentTimeMillis();
+            endTime   = System.nanoTime();
             bloomTime =  bloomTime + (endTime - startTime);
             //=======================================================
 
-            System.out.println("*** Naive Differential Experiment: " + i + " ***" );
             //Start experiment for NaiveDifferential--------
-            startTime = System.currentTimeMillis();
+            startTime = System.nanoTime();
             myNaive.retrieveRecord(key, diffFile,database);
-            endTime   = System.currentTimeMillis();
+            endTime   = System.nanoTime();
             naiveTime = naiveTime +  (endTime - startTime);
             //End experiment for NaiveDifferential--------
-            System.out.println("***** END OF ITERATION *****");
-            System.out.println();
-            System.out.println();
         }
-        System.out.println("Average time to retrive a record using BloomDifferential: " + 1.0 * bloomTime/numExperiments + " ms.");
-        System.out.println("TAverage time to retrive a record using naiveDifferential: " + 1.0 * naiveTime/numExperiments + " ms.");
+        System.out.println("Mode " + mode + ":");
+        System.out.println("Average time to retrive a record using BloomDifferential: " + bloomTime / 1e6 / numExperiments + " ms.");
+        System.out.println("Average time to retrive a record using naiveDifferential: " + naiveTime / 1e6 / numExperiments + " ms.");
     }
 
-    private String generateRandomKey(String keySelectedFromFile, int numItemsInFile){
-        int randomLineNumber = 0;//key will be located at this line number
-        int countLineNum = 1;//Counts the line numbers currently iterating through in text doc
-        String key = "";
-        Random rand = new Random();
-        randomLineNumber = rand.nextInt(numItemsInFile);
-//        System.out.println(randomLineNumber);
-
-        //Search for the key at randomLineNumber
-        File file = new File(keySelectedFromFile);
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while(countLineNum < randomLineNumber){
-                br.readLine();
-                countLineNum++;
-            }
-            line = br.readLine();//This should be line at line number: randomLineNumber
-            String[] arrOfStr = line.split(" ", 5); 
-
-            for(int i = 0; i < arrOfStr.length ; i++){
-                key = key + arrOfStr[i];
+    /**
+     * Read the key of a random line of a file through its index, without reading the lines before it.
+     * @param keys the index of a file of keys or of records
+     * @param rand the source of the line numbers
+     * @return the first 4 words of the line, "word1 word2 word3 word4"
+     */
+    private String generateRandomKey(LineIndex keys, Random rand){
+        int randomLineNumber = rand.nextInt(keys.numLines());//key will be located at this line number
+        try {
+            String line = keys.line(randomLineNumber);
+            int end = -1;
+            for(int i = 0; i < 4; i++){//a record continues after its 4th word, a key file line does not
+                end = line.indexOf(' ', end + 1);
+                if(end < 0){
+                    return line;
+                }
             }
+            return line.substring(0, end);
         }catch(IOException e){
-            System.out.println("Exception in getFileContents(" + keySelectedFromFile + "), msg=" + e);
+            System.out.println("Exception in getFileContents(" + keys + "), msg=" + e);
         }
-        return key;
+        return "";
     }
 
 
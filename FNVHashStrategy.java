@@ -0,0 +1,94 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * k Fowler–Noll–Vo hash functions (see kFNV), each with its own random prime offset basis.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public final class FNVHashStrategy implements HashStrategy {
+
+    private final kFNV[] kFNVS;//the k FNV functions
+    private final int filterSize;
+
+    /**
+     * Generate k FNV hash functions with range [0, filterSize).
+     * @param filterSize the size of the filter, a prime
+     * @param numHashes the number of hash functions to be generated
+     */
+    public FNVHashStrategy(int filterSize, int numHashes) {
+        this.filterSize = filterSize;
+        kFNVS = new kFNV[numHashes];
+        Random rand = new Random();
+        for (int i = 0; i < numHashes; i++) {
+            int offsetBasis = BloomSizing.leastPrime(rand.nextInt(Integer.MAX_VALUE) + 1);//a random positive prime
+            kFNVS[i] = new kFNV(offsetBasis, filterSize);
+        }
+    }
+
+    private FNVHashStrategy(kFNV[] kFNVS, int filterSize) {
+        this.kFNVS = kFNVS;
+        this.filterSize = filterSize;
+    }
+
+    static FNVHashStrategy read(DataInputStream in, int filterSize, int numHashes) throws IOException {
+        kFNV[] kFNVS = new kFNV[numHashes];
+        for (int i = 0; i < numHashes; i++)
+            kFNVS[i] = new kFNV(in.readLong(), in.readInt(), in.readInt(), filterSize);
+        return new FNVHashStrategy(kFNVS, filterSize);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(FNV);
+        out.writeInt(filterSize);
+        out.writeInt(kFNVS.length);
+        for (kFNV f : kFNVS) {
+            out.writeLong(f.getOffset_basis());
+            out.writeInt(f.getA());
+            out.writeInt(f.getB());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FNVHashStrategy))
+            return false;
+        FNVHashStrategy other = (FNVHashStrategy) o;
+        if (other.filterSize != filterSize || other.kFNVS.length != kFNVS.length)
+            return false;
+        for (int i = 0; i < kFNVS.length; i++) {
+            if (other.kFNVS[i].getOffset_basis() != kFNVS[i].getOffset_basis()
+                    || other.kFNVS[i].getA() != kFNVS[i].getA() || other.kFNVS[i].getB() != kFNVS[i].getB())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 31 * filterSize + kFNVS.length;
+        for (kFNV f : kFNVS)
+            h = 31 * (31 * (31 * h + Long.hashCode(f.getOffset_basis())) + f.getA()) + f.getB();
+        return h;
+    }
+
+    @Override
+    public int numHashes() {
+        return kFNVS.length;
+    }
+
+    @Override
+    public int filterSize() {
+        return filterSize;
+    }
+
+    @Override
+    public int index(int i, byte[] key, int offset, int length) {
+        return kFNVS[i].hashV(key, offset, length);
+    }
+}
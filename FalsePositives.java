@@ -1,188 +1,363 @@
 
 /**
- * @author Xiaoyun Fu and Gaurav Raj 
+ * @author Xiaoyun Fu and Gaurav Raj
  * All rights reserved.
- * This program implements an experiment to empirically evaluate the false probability rate of the bloom filters: 
- * BloomFilterFNV, BloomFilterMurmur, BloomFilterRan. 
- * 
+ * This program implements an experiment to empirically evaluate the false probability rate of the bloom filters:
+ * BloomFilterFNV, BloomFilterMurmur, BloomFilterRan.
  *
+ * The strings are not stored: the ith string is produced on demand from a seeded generator, so the same seed
+ * always gives the same strings, the strings added to a filter (i < largerSetSize) are all distinct, and the
+ * strings probed (largerSetSize <= i < largerSetSize + smallerSetSize) are distinct from the added ones.
+ * Every (filter, bits per element, number of hashes) configuration is evaluated independently, so the
+ * configurations run in parallel, one per core. The results are printed and written as CSV and JSON, with a
+ * 95% Wilson confidence interval for each false positive rate.
+ *
+ * FNV and Murmur are evaluated both in the classic layout, where every hash function addresses the whole filter,
+ * and partitioned into one segment per hash function (see PartitionedHashStrategy). Besides the rates, the time
+ * of addAll and appearsAll per key (ns/op) is reported; since the configurations run concurrently, compare the
+ * times of one run with each other rather than with other machines.
  */
 
-import java.security.PublicKey;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Random;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class FalsePositives {
 	 public static void main(String[] args) {
 		 final int biggerSetSize= 10000000;
 		 int[] bitsPerElementValues = {4, 8, 10};
+		 String[] filters = {"FNV", "Murmur", "Ran"};
+		 boolean[] layouts = {false, true}; //classic and partitioned
 		 FalsePositives falsePositives = new FalsePositives(biggerSetSize);
-		 for(int bitPerElement : bitsPerElementValues)
-		 {
-			 falsePositives.startExpKFNV(bitPerElement);
-			 falsePositives.startExpKMurmur(bitPerElement);
-			 falsePositives.startExpKRan(bitPerElement);
-		 }
+		 List<Result> results = falsePositives.runAll(falsePositives.configurations(filters, bitsPerElementValues, layouts),
+				 Runtime.getRuntime().availableProcessors());
+		 falsePositives.printResults(results);
+		 falsePositives.writeCsv(results, "falsePositives.csv");
+		 falsePositives.writeJson(results, "falsePositives.json");
 	 }
-	
-	
+
+	/**
+	 * One experiment: a filter type, its bits per element, its number of hash functions and its layout.
+	 */
+	static final class Config {
+		final String filter; //"FNV", "Murmur" or "Ran"
+		final int bitsPerElement;
+		final int numHashes;
+		final boolean partitioned; //one segment per hash function, FNV and Murmur only
+
+		Config(String filter, int bitsPerElement, int numHashes) {
+			this(filter, bitsPerElement, numHashes, false);
+		}
+
+		Config(String filter, int bitsPerElement, int numHashes, boolean partitioned) {
+			this.filter = filter;
+			this.bitsPerElement = bitsPerElement;
+			this.numHashes = numHashes;
+			this.partitioned = partitioned;
+		}
+
+		String layout() {
+			return partitioned ? "partitioned" : "classic";
+		}
+	}
+
+	/**
+	 * The outcome of one experiment.
+	 */
+	static final class Result {
+		Config config;
+		int filterSize;
+		int dataSize;
+		long probes;
+		long falsePositives;
+		double rate;
+		double low; //lower end of the 95% confidence interval of rate
+		double high; //upper end of the 95% confidence interval of rate
+		double theoretical; //(1 - e^(-k * n / m))^k
+		double addNanos; //time of addAll per key
+		double probeNanos; //time of appearsAll per key
+		double seconds;
+	}
+
+	private static final long KEY_SPACE = 8031810176L; //26^7, the first 7 characters of a string encode its index
+	private static final long KEY_MULTIPLIER = 0x9E3779B1L; //a prime, so i -> i * KEY_MULTIPLIER % KEY_SPACE is one-to-one
+	private static final int MIN_LENGTH_OF_STR = 7; //Lower Limit of String Length
+	private static final int MAX_LENGTH_OF_STR = 12; //Upper Limit of String Length
+	private static final int PROBE_BATCH_SIZE = 4096; //number of strings passed at once to addAll and appearsAll
+
 	//instance variables
-    HashSet<String> NoRepetitions = new HashSet<String>();//Used to check if the randomly generated String has been generated before
-    ArrayList<String> biggerSet = new ArrayList<String>();//a bigger Set of strings
-    ArrayList<String> smallerSet = new ArrayList<String>();//a smaller Set of strings
-    int largerSetSize;//Size of BiggerSet
+    int largerSetSize;//number of strings added to each bloom filter
+    int smallerSetSize;//number of strings checked for false positives
+    long seed;//seed of the string generator
 
 
     /**
-     * 
+     *
      * @param n the number of strings to be stored in the Bloom Filter
      */
     public FalsePositives(int n){
+        this(n, 42);
+    }
+
+    /**
+     *
+     * @param n the number of strings to be stored in the Bloom Filter
+     * @param seed the seed of the string generator
+     */
+    public FalsePositives(int n, long seed){
         largerSetSize = n;
-        generateRandomStrings(largerSetSize);
+        smallerSetSize = n / 10;
+        this.seed = seed;
     }
 
     /**
-     * Evaluate false positive rate of the bloom filter BloomFilterFNV.
+     * Build the experiments for every filter and every bits per element value. For each value b, the
+     * optimal number of hashes ln2 * b is tried together with one hash less and one hash more.
+     * @param filters the filter types, "FNV", "Murmur" or "Ran"
+     * @param bitsPerElementValues the bits per element values
+     * @return the configurations
      */
-    public void startExpKFNV(int bitsPerElement){
-        int falsePositives = 0;
-        BloomFilterFNV myBloomFilterFNV = new BloomFilterFNV(largerSetSize, bitsPerElement);
-        //Add everything in biggerSet to the Bloom Filter
-        for(int i = 0; i < biggerSet.size(); i++){
-            myBloomFilterFNV.add(biggerSet.get(i));
+    public List<Config> configurations(String[] filters, int[] bitsPerElementValues){
+        return configurations(filters, bitsPerElementValues, new boolean[] {false});
+    }
+
+    /**
+     * Build the experiments for every filter, bits per element value and layout. The partitioned layout is
+     * only built for FNV and Murmur.
+     * @param filters the filter types, "FNV", "Murmur" or "Ran"
+     * @param bitsPerElementValues the bits per element values
+     * @param layouts false for the classic layout, true for the partitioned one
+     * @return the configurations
+     */
+    public List<Config> configurations(String[] filters, int[] bitsPerElementValues, boolean[] layouts){
+        List<Config> configs = new ArrayList<Config>();
+        for(int bitsPerElement : bitsPerElementValues){
+            int k = BloomSizing.optimalNumHashes(bitsPerElement);
+            for(String filter : filters){
+                for(boolean partitioned : layouts){
+                    if(partitioned && filter.equals("Ran")){
+                        continue;
+                    }
+                    for(int numHashes = Math.max(1, k - 1); numHashes <= k + 1; numHashes++){
+                        configs.add(new Config(filter, bitsPerElement, numHashes, partitioned));
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Evaluate the configurations in parallel.
+     * @param configs the configurations
+     * @param threads the number of configurations evaluated at the same time
+     * @return the results, in the order of configs
+     */
+    public List<Result> runAll(List<Config> configs, int threads){
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for(final Config config : configs){
+            futures.add(pool.submit(() -> evaluate(config)));
         }
-        //Check whether the strings in smallerSet give false positive or not
-        for(int i = 0; i < smallerSet.size(); i++){
-            if(myBloomFilterFNV.appears(smallerSet.get(i))){
-                falsePositives++;
+        List<Result> results = new ArrayList<Result>();
+        try {
+            for(Future<Result> future : futures){
+                results.add(future.get());
             }
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Exception in runAll, msg=" + e);
+        } finally {
+            pool.shutdown();
         }
+        return results;
+    }
 
-        //Theoretical false positive rate is: 0.618^bitsPerElement
-        System.out.println("******** kFNV RESULTS ********* ");
-        System.out.println("False Positives: " + falsePositives);
-        System.out.println("biggerSet.size(): " + biggerSet.size());
-        System.out.println("smallerSet.size(): " + smallerSet.size());
-        System.out.println("myBloomFilterFNV.filterSize(): " + myBloomFilterFNV.filterSize());
-        System.out.println("myBloomFilterFNV.dataSize(): " + myBloomFilterFNV.dataSize());
-        System.out.println("myBloomFilterFNV.numHashes(): " + myBloomFilterFNV.numHashes());
-        double prob = (double) falsePositives / (double) smallerSet.size();
-        System.out.println("false positive rate: " + prob);
-        System.out.println("Theoretical false positive rate: " + Math.pow(0.618, bitsPerElement));
-        System.out.println("**********************************************************");
+    /**
+     * Evaluate the false positive rate of one configuration: add the larger set to a new filter and count the
+     * strings of the smaller set that give a false positive.
+     * The strings are generated and passed to the filter in batches of PROBE_BATCH_SIZE.
+     * @param config the configuration
+     * @return the result of the experiment
+     */
+    public Result evaluate(Config config){
+        long start = System.nanoTime();
+        BloomFilter filter = newFilter(config);
+        char[] buffer = new char[MAX_LENGTH_OF_STR];
+        String[] batch = new String[PROBE_BATCH_SIZE];
+        BitSet found = new BitSet(PROBE_BATCH_SIZE);
+        long addNanos = 0; //only the filter calls are timed, not the generation of the strings
+        for(long i = 0; i < largerSetSize; i += PROBE_BATCH_SIZE){
+            String[] keys = batch(i, largerSetSize, batch, buffer);
+            long t = System.nanoTime();
+            filter.addAll(keys);
+            addNanos += System.nanoTime() - t;
+        }
+        long probeNanos = 0;
+        long falsePositives = 0;
+        for(long i = largerSetSize; i < largerSetSize + smallerSetSize; i += PROBE_BATCH_SIZE){
+            String[] probes = batch(i, largerSetSize + smallerSetSize, batch, buffer);
+            long t = System.nanoTime();
+            filter.appearsAll(probes, found);
+            probeNanos += System.nanoTime() - t;
+            falsePositives += found.get(0, probes.length).cardinality();
+        }
+        Result result = new Result();
+        result.probes = smallerSetSize;
+        result.falsePositives = falsePositives;
+        result.addNanos = (double) addNanos / Math.max(1, largerSetSize);
+        result.probeNanos = (double) probeNanos / Math.max(1, smallerSetSize);
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        return complete(result, config, filter.filterSize(), filter.dataSize());
     }
 
     /**
-     * Evaluate false positive rate of the bloom filter BloomFilterMurmur.
+     * Create the empty filter of a configuration.
+     * @param config the configuration
+     * @return a filter for largerSetSize elements
      */
-    public void startExpKMurmur(int bitsPerElement){
-        int falsePositives = 0;
-        BloomFilterMurmur myBloomFilterMurmur = new BloomFilterMurmur(largerSetSize, bitsPerElement);
-        //Add everything in biggerSet to the Bloom Filter
-        for(int i = 0; i < biggerSet.size(); i++){
-            myBloomFilterMurmur.add(biggerSet.get(i));
+    BloomFilter newFilter(Config config){
+        switch(config.filter){
+            case "FNV":
+                return new BloomFilterFNV(largerSetSize, config.bitsPerElement, config.numHashes, config.partitioned);
+            case "Murmur":
+                return new BloomFilterMurmur(largerSetSize, config.bitsPerElement, config.numHashes, config.partitioned);
+            case "Ran":
+                if(config.partitioned){
+                    throw new IllegalArgumentException("Ran has no partitioned layout");
+                }
+                return new BloomFilterRan(largerSetSize, config.bitsPerElement, config.numHashes);
+            default:
+                throw new IllegalArgumentException("Unknown filter " + config.filter);
         }
-        //Check whether the strings in smallerSet give false positive or not
-        for(int i = 0; i < smallerSet.size(); i++){
-            if(myBloomFilterMurmur.appears(smallerSet.get(i))){
-                falsePositives++;
-            }
+    }
+
+    /**
+     * Fill batch with the strings from index first to min(first + batch.length, end) - 1.
+     * @return batch, or a shorter copy of it for the last, incomplete batch
+     */
+    private String[] batch(long first, long end, String[] batch, char[] buffer){
+        int size = (int) Math.min(batch.length, end - first);
+        String[] strings = size == batch.length ? batch : new String[size];
+        for(int j = 0; j < size; j++){
+            strings[j] = string(first + j, buffer);
         }
+        return strings;
+    }
 
-        //Theoretical false positive rate is: 0.618^bitsPerElement
-        System.out.println("********* k MURMUR RESULTS ********* ");
-        System.out.println("False Positives: " + falsePositives);
-        System.out.println("biggerSet.size(): " + biggerSet.size());
-        System.out.println("smallerSet.size(): " + smallerSet.size());
-        System.out.println("myBloomFilter.filterSize(): " + myBloomFilterMurmur.filterSize());
-        System.out.println("myBloomFilter.dataSize(): " + myBloomFilterMurmur.dataSize());
-        System.out.println("myBloomFilter.numHashes(): " + myBloomFilterMurmur.numHashes());
-        double prob = (double) falsePositives / (double) smallerSet.size();
-        System.out.println("false positive rate: " + prob);
-        System.out.println("Theoretical false positive rate: " + Math.pow(0.618, bitsPerElement));
-        System.out.println("**********************************************************");
+    /**
+     * Fill in the rates of a result.
+     */
+    private Result complete(Result result, Config config, int filterSize, int dataSize){
+        result.config = config;
+        result.filterSize = filterSize;
+        result.dataSize = dataSize;
+        result.rate = (double) result.falsePositives / (double) result.probes;
+        double z = 1.96; //95% confidence
+        double n = result.probes;
+        double p = result.rate;
+        double denominator = 1 + z * z / n;
+        double center = (p + z * z / (2 * n)) / denominator;
+        double halfWidth = z * Math.sqrt(p * (1 - p) / n + z * z / (4 * n * n)) / denominator;
+        result.low = Math.max(0, center - halfWidth);
+        result.high = Math.min(1, center + halfWidth);
+        result.theoretical = BloomSizing.falsePositiveRate(filterSize, dataSize, config.numHashes);
+        return result;
     }
 
     /**
-     * Evaluate false positive rate of the bloom filter BloomFilterRan.
+     * Get the ith string of the experiment: 7 to 12 lowercase letters. The first 7 letters encode i, so
+     * different values of i always give different strings.
+     * @param i the index of the string, 0 <= i < 26^7
+     * @param buffer a buffer of at least MAX_LENGTH_OF_STR chars, reused between calls
+     * @return the ith string
      */
-    public void startExpKRan(int bitsPerElement){
-        int falsePositives = 0;
-        BloomFilterRan myBloomFilterRAN = new BloomFilterRan(largerSetSize, bitsPerElement);
-        //Add everything in biggerSet to the Bloom Filter
-        for(int i = 0; i < biggerSet.size(); i++){
-            myBloomFilterRAN.add(biggerSet.get(i));
+    String string(long i, char[] buffer){
+        long v = Math.floorMod(i * KEY_MULTIPLIER + seed, KEY_SPACE);
+        for(int j = 0; j < MIN_LENGTH_OF_STR; j++){
+            buffer[j] = (char) (v % 26 + 'a');
+            v /= 26;
         }
-        //Check whether the strings in smallerSet give false positive or not
-        for(int i = 0; i < smallerSet.size(); i++){
-            if(myBloomFilterRAN.appears(smallerSet.get(i))){
-                falsePositives++;
-            }
+        long r = mix64(seed ^ i);
+        int strLength = MIN_LENGTH_OF_STR + (int) ((r >>> 59) % (MAX_LENGTH_OF_STR - MIN_LENGTH_OF_STR + 1));
+        for(int j = MIN_LENGTH_OF_STR; j < strLength; j++){
+            buffer[j] = (char) (((r >>> (5 * (j - MIN_LENGTH_OF_STR))) & 31) % 26 + 'a');
         }
+        return new String(buffer, 0, strLength);
+    }
 
-        //Theoretical false positive rate is: 0.618^bitsPerElement
-        System.out.println("******** kRAN RESULTS ********* ");
-        System.out.println("False Positives: " + falsePositives);
-        System.out.println("biggerSet.size(): " + biggerSet.size());
-        System.out.println("smallerSet.size(): " + smallerSet.size());
-        System.out.println("myBloomFilter.filterSize(): " + myBloomFilterRAN.filterSize());
-        System.out.println("myBloomFilter.dataSize(): " + myBloomFilterRAN.dataSize());
-        System.out.println("myBloomFilter.numHashes(): " + myBloomFilterRAN.numHashes());
-        double prob = (double) falsePositives / (double) smallerSet.size();
-        System.out.println("false positive rate: " + prob);
-        System.out.println("Theoretical false positive rate: " + Math.pow(0.618, bitsPerElement));
-        System.out.println("**********************************************************");
+    /**
+     * The finalizer of SplitMix64: a one-to-one mix of the bits of z.
+     */
+    private static long mix64(long z){
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
+    /**
+     * Print the results as a table.
+     */
+    public void printResults(List<Result> results){
+        System.out.println("**********************************************************");
+        System.out.println(csvHeader());
+        for(Result result : results){
+            System.out.println(csvLine(result));
+        }
+        System.out.println("**********************************************************");
+    }
 
-/**
- * Generate k + k/10 random distinct strings with length in the range [minimum, maximum].
- * Add k strings to biggerSet and k/10 strings to smallerSet.
- */
-    private void generateRandomStrings(int k){
-        int strLength;
-        int minLengthOfStr = 6;//Lower Limit of String Length
-        int maxLengthOfStr = 12;//Upper Limit of String Length
-        int counter = 0;//Increments every time you add something to the biggerSet
-        String randStr = "";
-
-        Random rand = new Random();
-        //k is number of strings to be added to biggerSet
-        while (biggerSet.size() < k){
-            randStr = "";
-            strLength = rand.nextInt(maxLengthOfStr - (minLengthOfStr - 1))
-                    + minLengthOfStr;
-            for(int j = 0; j < strLength; j++){
-                randStr = randStr + (char) (rand.nextInt(26) + 97);
-            }
-            if(! NoRepetitions.contains(randStr)){
-                if(counter < 10) {//Add the string to the biggerSet
-                    counter++;
-                    NoRepetitions.add(randStr);
-                    biggerSet.add(randStr);
-                }else{//Add the String to the smallerSet
-                    counter = 0;
-                    NoRepetitions.add(randStr);
-                    smallerSet.add(randStr);
-                }
+    /**
+     * Write the results to a CSV file.
+     */
+    public void writeCsv(List<Result> results, String fileName){
+        try (PrintWriter out = new PrintWriter(new FileWriter(fileName))) {
+            out.println(csvHeader());
+            for(Result result : results){
+                out.println(csvLine(result));
             }
+        } catch (IOException e) {
+            System.out.println("Exception in writeCsv(" + fileName + "), msg=" + e);
         }
     }
 
     /**
-     * Print out the strings in biggerSet and smallerSet.
+     * Write the results to a JSON file, as an array of objects.
      */
-    public void printList(){
-        System.out.println("*** Printing biggerSet ***");
-        for(String s: biggerSet){
-            System.out.println(s);
+    public void writeJson(List<Result> results, String fileName){
+        try (PrintWriter out = new PrintWriter(new FileWriter(fileName))) {
+            out.println("[");
+            for(int i = 0; i < results.size(); i++){
+                Result r = results.get(i);
+                out.printf(Locale.ROOT, "  {\"filter\": \"%s\", \"layout\": \"%s\", \"bitsPerElement\": %d, \"numHashes\": %d, "
+                        + "\"filterSize\": %d, \"dataSize\": %d, \"probes\": %d, \"falsePositives\": %d, \"rate\": %.6g, "
+                        + "\"ciLow\": %.6g, \"ciHigh\": %.6g, \"theoretical\": %.6g, \"addNsPerOp\": %.2f, \"probeNsPerOp\": %.2f, "
+                        + "\"seconds\": %.3f}%s%n",
+                        r.config.filter, r.config.layout(), r.config.bitsPerElement, r.config.numHashes, r.filterSize, r.dataSize,
+                        r.probes, r.falsePositives, r.rate, r.low, r.high, r.theoretical, r.addNanos, r.probeNanos, r.seconds,
+                        i + 1 < results.size() ? "," : "");
+            }
+            out.println("]");
+        } catch (IOException e) {
+            System.out.println("Exception in writeJson(" + fileName + "), msg=" + e);
         }
+    }
 
-        System.out.println("*** Printing smallerSet ***");
-        for(String s: smallerSet){
-            System.out.println(s);
-        }
+    private static String csvHeader(){
+        return "filter,layout,bitsPerElement,numHashes,filterSize,dataSize,probes,falsePositives,rate,ciLow,ciHigh,theoretical,"
+                + "addNsPerOp,probeNsPerOp,seconds";
+    }
+
+    private static String csvLine(Result r){
+        return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%d,%d,%.6g,%.6g,%.6g,%.6g,%.2f,%.2f,%.3f",
+                r.config.filter, r.config.layout(), r.config.bitsPerElement, r.config.numHashes, r.filterSize, r.dataSize,
+                r.probes, r.falsePositives, r.rate, r.low, r.high, r.theoretical, r.addNanos, r.probeNanos, r.seconds);
     }
 }
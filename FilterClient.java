@@ -0,0 +1,176 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class asks a FilterServer whether keys appear in its filter, or fetches a copy of the filter to probe it
+ * locally. Keys are canonicalized here with the mode announced by the server, so the server hashes the bytes it
+ * receives. appearsAll sends the keys in batches and keeps up to WINDOW batches in flight before reading their
+ * answers, so a large set of keys costs about one round trip instead of one per batch.
+ * A FilterClient is used by one thread at a time.
+ *
+ * Usage: java FilterClient port [key ...]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.BitSet;
+
+public class FilterClient implements AutoCloseable {
+
+    static final int BATCH_SIZE = 4096;//keys per APPEARS_ALL request
+    static final int WINDOW = 8;//requests sent before the first answer is read
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final KeyCanonicalizer canonicalizer;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java FilterClient port [key ...]");
+            return;
+        }
+        try (FilterClient client = new FilterClient(Integer.parseInt(args[0]))) {
+            long start = System.nanoTime();
+            HashedBloomFilter local = client.fetchFilter();
+            long millis = (System.nanoTime() - start) / 1000000;
+            ByteArrayOutputStream compact = new ByteArrayOutputStream();
+            local.writeCompactTo(new DataOutputStream(compact));
+            System.out.println("Fetched a filter of " + local.dataSize() + " keys in " + millis + " ms: "
+                    + compact.size() + " bytes for " + local.filterSize() + " bits (" + (local.filterSize() + 7) / 8 + " bytes raw)");
+            for (int i = 1; i < args.length; i++)
+                System.out.println(args[i] + ": server " + client.appears(args[i]) + ", local " + client.appearsIn(local, args[i]));
+        }
+    }
+
+    /**
+     * Connect to a FilterServer on this machine.
+     * @param port the port of the server
+     * @throws IOException if the server cannot be reached or does not answer as a FilterServer
+     */
+    public FilterClient(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Connect to a FilterServer.
+     * @param host the address of the server
+     * @param port the port of the server
+     * @throws IOException if the server cannot be reached or does not answer as a FilterServer
+     */
+    public FilterClient(InetAddress host, int port) throws IOException {
+        socket = new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != FilterServer.MAGIC)
+                throw new IOException(host + ":" + port + " is not a filter server");
+            int mode = in.readUnsignedByte();
+            if (mode >= KeyCanonicalizer.Mode.values().length)
+                throw new IOException("unknown canonicalizer mode " + mode);
+            canonicalizer = KeyCanonicalizer.of(KeyCanonicalizer.Mode.values()[mode]);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the canonicalizer of the filter of the server.
+     * @return the canonicalizer
+     */
+    public KeyCanonicalizer canonicalizer() {
+        return canonicalizer;
+    }
+
+    /**
+     * Check whether a key appears in the filter of the server.
+     * @param key the key "word1 word2 word3 word4"
+     * @return true if the key appears in the filter
+     * @throws IOException if the server cannot be reached
+     */
+    public boolean appears(String key) throws IOException {
+        out.writeByte(FilterServer.APPEARS);
+        writeKey(canonicalizer.canonicalize(key));
+        out.flush();
+        return in.readUnsignedByte() != 0;
+    }
+
+    /**
+     * Check the membership of many keys in the filter of the server, with pipelined requests.
+     * @param keys the keys
+     * @param found bit i of found is set if keys[i] appears in the filter and cleared otherwise
+     * @throws IOException if the server cannot be reached
+     */
+    public void appearsAll(String[] keys, BitSet found) throws IOException {
+        int numBatches = (keys.length + BATCH_SIZE - 1) / BATCH_SIZE;
+        int sent = 0;
+        for (int received = 0; received < numBatches; received++) {
+            //keep the window full, so the server always has the next batch to answer
+            while (sent < numBatches && sent - received < WINDOW) {
+                int start = sent * BATCH_SIZE;
+                int end = Math.min(keys.length, start + BATCH_SIZE);
+                out.writeByte(FilterServer.APPEARS_ALL);
+                FilterServer.writeVarint(out, end - start);
+                for (int i = start; i < end; i++)
+                    writeKey(canonicalizer.canonicalize(keys[i]));
+                sent++;
+            }
+            out.flush();
+            int start = received * BATCH_SIZE;
+            int end = Math.min(keys.length, start + BATCH_SIZE);
+            byte[] bits = new byte[(end - start + 7) / 8];
+            in.readFully(bits);
+            for (int i = start; i < end; i++)
+                found.set(i, (bits[(i - start) >>> 3] & (1 << ((i - start) & 7))) != 0);
+        }
+    }
+
+    /**
+     * Fetch a copy of the filter of the server, to probe it without round trips with appearsIn.
+     * @return the copy
+     * @throws IOException if the server cannot be reached
+     */
+    public HashedBloomFilter fetchFilter() throws IOException {
+        out.writeByte(FilterServer.GET_FILTER);
+        out.flush();
+        int length = in.readInt();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return HashedBloomFilter.readCompactFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Check whether a key appears in a copy of the filter fetched by fetchFilter. The key is canonicalized as
+     * appears sends it, without whitespace, so the copy answers as the server does; HashedBloomFilter.appears
+     * would keep the whitespace and miss keys of the differential file.
+     * @param copy the filter returned by fetchFilter
+     * @param key the key "word1 word2 word3 word4"
+     * @return true if the key may be in the filter, false if it is not
+     */
+    public boolean appearsIn(HashedBloomFilter copy, String key) {
+        return copy.appearsCanonical(canonicalizer.canonicalize(key));
+    }
+
+    private void writeKey(byte[] key) throws IOException {
+        FilterServer.writeVarint(out, key.length);
+        out.write(key);
+    }
+
+    /**
+     * Disconnect from the server.
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,216 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class serves the filter of a differential file to other processes over a TCP socket on the loopback
+ * interface, so the backup agents on a machine share one filter instead of each building its own from the
+ * differential file. See FilterClient.
+ *
+ * Protocol (all numbers big-endian, lengths and counts as unsigned varints, 7 bits per byte, low bits first):
+ *  - on connection the server sends the int MAGIC and the byte of the KeyCanonicalizer mode of the filter; the
+ *    client sends keys as canonical bytes of that mode;
+ *  - APPEARS, key length, key bytes: answered by one byte, 1 if the key appears and 0 otherwise;
+ *  - APPEARS_ALL, count, count times (key length, key bytes): answered by (count + 7) / 8 bytes, where bit i % 8
+ *    of byte i / 8 is set if key i appears;
+ *  - GET_FILTER: answered by the int length and the bytes of HashedBloomFilter.writeCompactTo, so the client
+ *    can probe a copy of the filter without a round trip per key.
+ * Requests are answered in order, and a client may send several before reading the answers (pipelining); the
+ * answers are flushed when no request is waiting. An invalid request closes the connection.
+ *
+ * Usage: java FilterServer [differential file] [port] [false positive rate]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+public class FilterServer implements AutoCloseable {
+
+    static final int MAGIC = 0x42465331;//"BFS1"
+    static final int APPEARS = 1;
+    static final int APPEARS_ALL = 2;
+    static final int GET_FILTER = 3;
+    static final int MAX_KEY_LENGTH = 1 << 16;
+    static final int MAX_BATCH = 1 << 16;//the most keys of one APPEARS_ALL
+
+    private final HashedBloomFilter filter;
+    private final ServerSocket serverSocket;
+    private final ExecutorService pool;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    public static void main(String[] args) throws IOException {
+        String diffFile = args.length > 0 ? args[0] : "differential.txt";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+        HashedBloomFilter filter = (HashedBloomFilter) new BloomDifferential().createFilter(diffFile, rate);
+        try (FilterServer server = new FilterServer(filter, port)) {
+            System.out.println("Serving the filter of " + diffFile + " (" + filter.dataSize() + " keys, "
+                    + filter.filterSize() + " bits) on port " + server.port() + ", press Enter to stop");
+            System.in.read();
+        }
+    }
+
+    /**
+     * Start serving a filter on the loopback interface.
+     * @param filter the filter; it must not change while it is served, since a HashedBloomFilter is not thread-safe
+     * @param port the port, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public FilterServer(HashedBloomFilter filter, int port) throws IOException {
+        this.filter = filter;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "filter server");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.execute(this::acceptAll);
+    }
+
+    /**
+     * Get the port the server listens on.
+     * @return the port
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptAll() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed())
+                    System.out.println("Exception in FilterServer(" + serverSocket + "), msg=" + e);
+                continue;
+            }
+            clients.add(socket);
+            try {
+                pool.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {//closed meanwhile
+                clients.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Answer the requests of one client until it disconnects.
+     */
+    private void serve(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            out.writeInt(MAGIC);
+            out.writeByte(filter.canonicalizer().mode().ordinal());
+            out.flush();
+            int request;
+            while ((request = in.read()) >= 0) {
+                switch (request) {
+                    case APPEARS:
+                        out.writeByte(filter.appearsCanonical(readKey(in)) ? 1 : 0);
+                        break;
+                    case APPEARS_ALL:
+                        int count = readVarint(in);
+                        if (count > MAX_BATCH)
+                            throw new IOException("batch of " + count + " keys");
+                        byte[] found = new byte[(count + 7) / 8];
+                        for (int i = 0; i < count; i++) {
+                            if (filter.appearsCanonical(readKey(in)))
+                                found[i >>> 3] |= 1 << (i & 7);
+                        }
+                        out.write(found);
+                        break;
+                    case GET_FILTER:
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        filter.writeCompactTo(new DataOutputStream(bytes));
+                        out.writeInt(bytes.size());
+                        bytes.writeTo(out);
+                        break;
+                    default:
+                        throw new IOException("unknown request " + request);
+                }
+                if (in.available() == 0)//no pipelined request is waiting
+                    out.flush();
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed())
+                System.out.println("Exception in FilterServer(" + socket.getRemoteSocketAddress() + "), msg=" + e);
+        } finally {
+            clients.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static byte[] readKey(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        if (length > MAX_KEY_LENGTH)
+            throw new IOException("key of " + length + " bytes");
+        byte[] key = new byte[length];
+        in.readFully(key);
+        return key;
+    }
+
+    /**
+     * Write a non-negative int in 7-bit groups, low bits first, the high bit of a byte set if another follows.
+     */
+    static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Read an int written by writeVarint.
+     */
+    static int readVarint(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (v < 0)
+                    break;
+                return v;
+            }
+        }
+        throw new IOException("invalid varint");
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //closing anyway
+        }
+    }
+
+    /**
+     * Stop accepting clients and disconnect the connected ones.
+     */
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.out.println("Exception in FilterServer(" + serverSocket + "), msg=" + e);
+        }
+        pool.shutdown();
+        for (Socket socket : clients)
+            closeQuietly(socket);
+    }
+}
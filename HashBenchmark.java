@@ -0,0 +1,127 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This program measures the throughput and the quality of the hash functions in Hashes, and of the
+ * MurmurHash64A used by kMurmur before, for comparison.
+ *
+ * Throughput: GB/s over 4 KB inputs, and ns per hash over 24-byte keys (the size of a 4-word key).
+ * Quality:
+ *  - avalanche: flipping one input bit should flip every output bit with probability 1/2. The worst
+ *    deviation from 1/2 over all (input bit, output bit) pairs is reported.
+ *  - buckets: 1M similar keys ("key0", "key1", ...) are reduced into 1024 buckets with Hashes.reduce; the
+ *    chi-square statistic should be about 1023 for a uniform hash.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class HashBenchmark {
+
+    interface HashFunction {
+        long hash(byte[] data, int offset, int length);
+    }
+
+    private static long blackhole;
+
+    public static void main(String[] args) {
+        String[] names = {"FNV-1a", "FNV-1a words", "FNV-1a words+fmix", "Murmur3 x64_128", "XXH3", "MurmurHash64A"};
+        HashFunction[] functions = {
+            (d, o, l) -> Hashes.fnv1a64(d, o, l, Hashes.FNV_OFFSET_BASIS),
+            (d, o, l) -> Hashes.fnv1a64Words(d, o, l, Hashes.FNV_OFFSET_BASIS),
+            (d, o, l) -> Hashes.fmix64(Hashes.fnv1a64Words(d, o, l, Hashes.FNV_OFFSET_BASIS)),
+            (d, o, l) -> Hashes.murmur3x64(d, o, l, 0),
+            (d, o, l) -> Hashes.xxh3(d, o, l, 0),
+            (d, o, l) -> kMurmur.hash64(d, l, 0),//only called with o == 0
+        };
+        System.out.printf("%-18s %10s %12s %14s %12s%n", "hash", "GB/s", "ns/24B key", "avalanche bias", "chi-square");
+        for (int f = 0; f < functions.length; f++) {
+            HashFunction function = functions[f];
+            System.out.printf("%-18s %10.2f %12.2f %14.4f %12.1f%n", names[f], throughput(function, 4096),
+                    nanosPerHash(function, 24), avalancheBias(function, 24), chiSquare(function, 1 << 20, 1024));
+        }
+    }
+
+    /**
+     * Hash a 4 KB buffer repeatedly.
+     * @return the throughput in GB/s
+     */
+    static double throughput(HashFunction function, int size) {
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        int iterations = (1 << 30) / size;//1 GB per round
+        long elapsed = 0;
+        for (int round = 0; round < 3; round++) {//the first rounds warm up the JIT
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                blackhole += function.hash(data, 0, size);
+            elapsed = System.nanoTime() - start;
+        }
+        return (double) iterations * size / elapsed;
+    }
+
+    /**
+     * Hash many different short keys.
+     * @return the average time of one hash, in ns
+     */
+    static double nanosPerHash(HashFunction function, int keyLength) {
+        byte[] data = new byte[keyLength];
+        new Random(2).nextBytes(data);
+        int iterations = 1 << 24;
+        long elapsed = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                data[0] = (byte) i;//a different key every time
+                data[1] = (byte) (i >>> 8);
+                blackhole += function.hash(data, 0, keyLength);
+            }
+            elapsed = System.nanoTime() - start;
+        }
+        return (double) elapsed / iterations;
+    }
+
+    /**
+     * Flip every bit of random keys and count how often each output bit flips.
+     * @return the largest |P(output bit j flips | input bit i flipped) - 1/2| over all i and j
+     */
+    static double avalancheBias(HashFunction function, int keyLength) {
+        int trials = 2000;
+        int[][] flips = new int[keyLength * 8][64];
+        Random rand = new Random(3);
+        byte[] key = new byte[keyLength];
+        for (int t = 0; t < trials; t++) {
+            rand.nextBytes(key);
+            long base = function.hash(key, 0, keyLength);
+            for (int bit = 0; bit < keyLength * 8; bit++) {
+                key[bit >>> 3] ^= (byte) (1 << (bit & 7));
+                long diff = base ^ function.hash(key, 0, keyLength);
+                key[bit >>> 3] ^= (byte) (1 << (bit & 7));
+                for (int j = 0; j < 64; j++)
+                    flips[bit][j] += (int) ((diff >>> j) & 1);
+            }
+        }
+        double worst = 0;
+        for (int[] row : flips)
+            for (int count : row)
+                worst = Math.max(worst, Math.abs((double) count / trials - 0.5));
+        return worst;
+    }
+
+    /**
+     * Reduce keys "key0", "key1", ... into buckets.
+     * @return the chi-square statistic of the bucket counts against the uniform distribution
+     */
+    static double chiSquare(HashFunction function, int numKeys, int numBuckets) {
+        long[] counts = new long[numBuckets];
+        for (int i = 0; i < numKeys; i++) {
+            byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+            counts[Hashes.reduce(function.hash(key, 0, key.length), numBuckets)]++;
+        }
+        double expected = (double) numKeys / numBuckets;
+        double chi = 0;
+        for (long count : counts)
+            chi += (count - expected) * (count - expected) / expected;
+        return chi;
+    }
+}
@@ -0,0 +1,89 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * The k hash functions of a bloom filter. A strategy is created for a filter size and fixes its random
+ * parameters (offset bases, seeds, ...) once, so two filters built with the same strategy set the same bits for
+ * the same key. Strategies are equal when they have the same type, filter size, k and parameters, so a strategy
+ * read back with readFrom equals the one that was written.
+ * Implementations: FNVHashStrategy, MurmurHashStrategy, UniversalHashStrategy, and PartitionedHashStrategy,
+ * which splits the filter into one segment per hash function of another strategy.
+ * A strategy can be written with writeTo and read back with readFrom, so a saved filter keeps its hash functions.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public interface HashStrategy {
+
+    byte FNV = 1;//the tags written first by writeTo
+    byte MURMUR = 2;
+    byte UNIVERSAL = 3;
+    byte PARTITIONED = 4;
+
+    /**
+     * Get the number of hash functions.
+     * @return k
+     */
+    int numHashes();
+
+    /**
+     * Get the size of the range of the hash functions.
+     * @return the filter size p; every index is in [0, p)
+     */
+    int filterSize();
+
+    /**
+     * Compute the value of the ith hash function on a key.
+     * @param i the hash function, 0 <= i < numHashes()
+     * @param key the bytes of the key, already canonicalized (lower-cased, UTF-8)
+     * @param offset the index of the first byte of the key
+     * @param length the number of bytes of the key
+     * @return the index of the key in the filter for hash function i, in [0, filterSize())
+     */
+    int index(int i, byte[] key, int offset, int length);
+
+    /**
+     * Write the tag and the parameters of this strategy.
+     * @param out the output
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutputStream out) throws IOException;
+
+    /**
+     * Check whether another strategy computes the same indexes: the same type, filter size, number of hash
+     * functions and parameters.
+     * @param other another object
+     * @return true if other is an equal strategy
+     */
+    @Override
+    boolean equals(Object other);
+
+    @Override
+    int hashCode();
+
+    /**
+     * Read a strategy written by writeTo. It computes the same indexes as the strategy that was written.
+     * @param in the input
+     * @return the strategy
+     * @throws IOException if in cannot be read or does not hold a strategy
+     */
+    static HashStrategy readFrom(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        int filterSize = in.readInt();
+        int numHashes = in.readInt();
+        switch (tag) {
+            case FNV:
+                return FNVHashStrategy.read(in, filterSize, numHashes);
+            case MURMUR:
+                return MurmurHashStrategy.read(in, filterSize, numHashes);
+            case UNIVERSAL:
+                return UniversalHashStrategy.read(in, filterSize, numHashes);
+            case PARTITIONED:
+                return new PartitionedHashStrategy(readFrom(in));
+            default:
+                throw new IOException("unknown hash strategy " + tag);
+        }
+    }
+}
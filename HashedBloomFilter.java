@@ -0,0 +1,359 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class implements a bloom filter over a BitSet, with the k hash functions given by a HashStrategy.
+ * BloomFilterFNV, BloomFilterMurmur and BloomFilterRan only choose the strategy. The probe loops are final
+ * and call the strategy through a final field, so when a program uses one strategy the JIT sees a single
+ * receiver type at the call and inlines the hash function into the loop.
+ * Strings are turned into the hashed bytes by a KeyCanonicalizer, which decides whether membership is
+ * case-insensitive; addCanonical and appearsCanonical take bytes that are already canonical.
+ *
+ * A written filter starts with FORMAT, the version of the layout, then holds its hash functions, its
+ * canonicalizer mode, dataSize and its bits. A filter written in another layout (e.g. before the canonicalizer
+ * mode was added, without FORMAT) is rejected when it is read, so the file it was saved in is rebuilt.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+public class HashedBloomFilter implements BloomFilter {
+
+    static final int BATCH_SIZE = 64; //The number of keys hashed together by addAll and appearsAll
+    static final int FORMAT = 0x424c4632; //"BLF2", the first int of a written filter, changed with its layout
+
+    private final BitSet myBit; //The Bloom Filter, a BitSet is used instead of an integer array to save space because only binary numbers are stored.
+    private final HashStrategy strategy; //The k hash functions
+    private final KeyCanonicalizer canonicalizer; //Turns strings into the hashed bytes
+    private final int filterSize; //The size of the bloom filter
+    private final int k; //The number of hash functions
+    private int numOfElmntsAdded = 0; //Counts the number of elements added to the Bloom Filter
+
+    /**
+     * Creates an empty case-insensitive Bloom filter whose size and hash functions are those of strategy.
+     * @param strategy the k hash functions
+     */
+    public HashedBloomFilter(HashStrategy strategy) {
+        this(strategy, KeyCanonicalizer.LOWER_CASE);
+    }
+
+    /**
+     * Creates an empty Bloom filter whose size and hash functions are those of strategy.
+     * @param strategy the k hash functions
+     * @param canonicalizer turns the strings into the hashed bytes
+     */
+    public HashedBloomFilter(HashStrategy strategy, KeyCanonicalizer canonicalizer) {
+        this.strategy = strategy;
+        this.canonicalizer = canonicalizer;
+        filterSize = strategy.filterSize();
+        k = strategy.numHashes();
+        myBit = new BitSet(filterSize);
+    }
+
+    @Override
+    public final void add(String s) {
+        addCanonical(canonicalizer.fold(s));
+    }
+
+    @Override
+    public final void addCanonical(byte[] key) {
+        for (int i = 0; i < k; i++) {
+            myBit.set(strategy.index(i, key, 0, key.length));
+        }
+        numOfElmntsAdded++;
+    }
+
+    @Override
+    public final boolean appears(String s) {
+        return appearsCanonical(canonicalizer.fold(s));
+    }
+
+    @Override
+    public final boolean appearsCanonical(byte[] key) {
+        for (int i = 0; i < k; i++) {
+            if (!myBit.get(strategy.index(i, key, 0, key.length))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  Add all strings of keys to the bloom filter. The keys are processed in groups of BATCH_SIZE: all
+     *  k hash values of a group are computed first, then the bits are set, so the hashing is not
+     *  interleaved with the random accesses to the filter.
+     * @param keys the strings to be added to the Bloom Filter
+     */
+    @Override
+    public final void addAll(String[] keys) {
+        int[] indexes = new int[BATCH_SIZE * k];
+        for (int start = 0; start < keys.length; start += BATCH_SIZE) {
+            int end = Math.min(keys.length, start + BATCH_SIZE);
+            hashBatch(keys, start, end, indexes);
+            for (int i = 0; i < (end - start) * k; i++) {
+                myBit.set(indexes[i]);
+            }
+            numOfElmntsAdded += end - start;
+        }
+    }
+
+    /**
+     * Check the membership of many strings at once, as appears.
+     * The keys are processed in groups of BATCH_SIZE: all k hash values of a group are computed first, then
+     * all k bits of every key are tested without an early exit. The bit tests of a group do not depend on each
+     * other, so the processor can overlap their cache misses instead of waiting for them one at a time.
+     * @param keys the strings whose membership in the bloom filter is to be checked
+     * @param out bit i of out is set if keys[i] appears in the filter and cleared otherwise
+     */
+    @Override
+    public final void appearsAll(String[] keys, BitSet out) {
+        int[] indexes = new int[BATCH_SIZE * k];
+        for (int start = 0; start < keys.length; start += BATCH_SIZE) {
+            int end = Math.min(keys.length, start + BATCH_SIZE);
+            hashBatch(keys, start, end, indexes);
+            for (int j = start, i = 0; j < end; j++) {
+                boolean found = true;
+                for (int h = 0; h < k; h++, i++) {
+                    found &= myBit.get(indexes[i]);
+                }
+                out.set(j, found);
+            }
+        }
+    }
+
+    /**
+     * Compute the k hash values of keys[start], ..., keys[end - 1] into indexes, k consecutive values per key.
+     */
+    private void hashBatch(String[] keys, int start, int end, int[] indexes) {
+        for (int j = start, i = 0; j < end; j++) {
+            byte[] key = canonicalizer.fold(keys[j]);
+            for (int h = 0; h < k; h++, i++) {
+                indexes[i] = strategy.index(h, key, 0, key.length);
+            }
+        }
+    }
+
+    @Override
+    public final KeyCanonicalizer canonicalizer() {
+        return canonicalizer;
+    }
+
+    @Override
+    public final int filterSize() {
+        return filterSize;
+    }
+
+    @Override
+    public final int dataSize() {
+        return numOfElmntsAdded;
+    }
+
+    @Override
+    public final int numHashes() {
+        return k;
+    }
+
+    /**
+     * Estimate the number of distinct elements added to the filter from the number X of bits set
+     * (Swamidass and Baldi): n = -(m / k) * ln(1 - X / m). Unlike dataSize, adding the same key twice does not
+     * count twice.
+     * @return the estimated number of distinct elements, or infinity if every bit is set
+     */
+    @Override
+    public final double estimatedCardinality() {
+        return estimateCardinality(myBit.cardinality());
+    }
+
+    /**
+     * Get the fraction of bits set in every segment of a partitioned filter (see PartitionedHashStrategy), or in
+     * the whole filter otherwise. In a partitioned filter every segment fills at the same rate, so a segment
+     * filling faster than the others shows a skewed hash function.
+     * @return the fill of segment i at index i, or a single value for a filter that is not partitioned
+     */
+    public final double[] segmentFill() {
+        if (!(strategy instanceof PartitionedHashStrategy))
+            return new double[] {(double) myBit.cardinality() / filterSize};
+        int segmentSize = ((PartitionedHashStrategy) strategy).segmentSize();
+        double[] fill = new double[k];
+        for (int i = 0; i < k; i++) {
+            int from = i * segmentSize;
+            int set = 0;
+            for (int b = myBit.nextSetBit(from); b >= 0 && b < from + segmentSize; b = myBit.nextSetBit(b + 1))
+                set++;
+            fill[i] = (double) set / segmentSize;
+        }
+        return fill;
+    }
+
+    /**
+     * Check whether another filter can be combined with this one: it must use the same hash functions
+     * (an equal strategy, e.g. the same one or one read back from a saved filter), hence the same size, and the
+     * same canonicalizer.
+     * @param other another filter
+     * @return true if union and intersect accept other
+     */
+    public final boolean isCompatible(HashedBloomFilter other) {
+        return other.strategy.equals(strategy) && other.canonicalizer == canonicalizer;
+    }
+
+    /**
+     * Add every element of other to this filter, by or-ing the bit sets a word (64 bits) at a time.
+     * Afterwards this filter is exactly the filter of the union of both sets, as if every key had been added to it.
+     * dataSize becomes the sum of both dataSize values.
+     * @param other a filter built with the same strategy
+     * @throws IllegalArgumentException if other is not compatible
+     */
+    public final void union(HashedBloomFilter other) {
+        checkCompatible(other);
+        myBit.or(other.myBit);
+        numOfElmntsAdded += other.numOfElmntsAdded;
+    }
+
+    /**
+     * Keep only the bits set in both filters, a word at a time. Every key added to both filters still appears,
+     * but the result can have more bits set than the filter of the intersection would have, so it can have more
+     * false positives. dataSize becomes the estimated cardinality of the result.
+     * @param other a filter built with the same strategy
+     * @throws IllegalArgumentException if other is not compatible
+     */
+    public final void intersect(HashedBloomFilter other) {
+        checkCompatible(other);
+        myBit.and(other.myBit);
+        numOfElmntsAdded = (int) Math.min(Integer.MAX_VALUE, Math.round(estimatedCardinality()));
+    }
+
+    /**
+     * Estimate the number of distinct elements in both this filter and other, without changing either, as
+     * |A| + |B| - |A union B|, each estimated from the number of bits set.
+     * @param other a filter built with the same strategy
+     * @return the estimated size of the intersection, at least 0
+     * @throws IllegalArgumentException if other is not compatible
+     */
+    public final double estimatedOverlap(HashedBloomFilter other) {
+        checkCompatible(other);
+        BitSet union = (BitSet) myBit.clone();
+        union.or(other.myBit);
+        double overlap = estimatedCardinality() + other.estimatedCardinality() - estimateCardinality(union.cardinality());
+        return Math.max(0, overlap);
+    }
+
+    private double estimateCardinality(int bitsSet) {
+        if (bitsSet >= filterSize)
+            return Double.POSITIVE_INFINITY;
+        return -((double) filterSize / k) * Math.log(1 - (double) bitsSet / filterSize);
+    }
+
+    private void checkCompatible(HashedBloomFilter other) {
+        if (!isCompatible(other))
+            throw new IllegalArgumentException("filters built with different hash functions or canonicalizers cannot be combined");
+    }
+
+    /**
+     * Write this filter: FORMAT, its hash functions, canonicalizer mode, dataSize and bits.
+     * @param out the output
+     * @throws IOException if out cannot be written
+     */
+    public final void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT);
+        strategy.writeTo(out);
+        out.writeByte(canonicalizer.mode().ordinal());
+        out.writeInt(numOfElmntsAdded);
+        long[] words = myBit.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words)
+            out.writeLong(word);
+    }
+
+    /**
+     * Read a filter written by writeTo. It answers appears exactly like the filter that was written.
+     * @param in the input
+     * @return the filter
+     * @throws IOException if in cannot be read or does not hold a filter
+     */
+    public static HashedBloomFilter readFrom(DataInputStream in) throws IOException {
+        HashedBloomFilter filter = readHeader(in);
+        int numWords = in.readInt();
+        if (numWords < 0 || numWords > (filter.filterSize + 63) / 64)
+            throw new IOException("filter of " + numWords + " words does not fit " + filter.filterSize + " bits");
+        long[] words = new long[numWords];
+        for (int w = 0; w < numWords; w++)
+            words[w] = in.readLong();
+        filter.myBit.or(BitSet.valueOf(words));//myBit keeps the capacity of the full filter size
+        return filter;
+    }
+
+    /**
+     * Write this filter as writeTo, but with its bits in the smaller of raw words and Elias-Fano coding
+     * (see CompactBits), to ship it to a client (see FilterServer).
+     * @param out the output
+     * @throws IOException if out cannot be written
+     */
+    public final void writeCompactTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT);
+        strategy.writeTo(out);
+        out.writeByte(canonicalizer.mode().ordinal());
+        out.writeInt(numOfElmntsAdded);
+        CompactBits.write(myBit, filterSize, out);
+    }
+
+    /**
+     * Read a filter written by writeCompactTo.
+     * @param in the input
+     * @return the filter
+     * @throws IOException if in cannot be read or does not hold a filter
+     */
+    public static HashedBloomFilter readCompactFrom(DataInputStream in) throws IOException {
+        HashedBloomFilter filter = readHeader(in);
+        filter.myBit.or(CompactBits.read(in, filter.filterSize));
+        return filter;
+    }
+
+    /**
+     * Read the format, hash functions, canonicalizer mode and dataSize of a filter, and create it empty.
+     */
+    private static HashedBloomFilter readHeader(DataInputStream in) throws IOException {
+        int format = in.readInt();
+        if (format != FORMAT)
+            throw new IOException("unknown filter format " + Integer.toHexString(format) + ", the filter must be rebuilt");
+        HashStrategy strategy = HashStrategy.readFrom(in);
+        int mode = in.readUnsignedByte();
+        if (mode >= KeyCanonicalizer.Mode.values().length)
+            throw new IOException("unknown canonicalizer mode " + mode);
+        HashedBloomFilter filter = new HashedBloomFilter(strategy, KeyCanonicalizer.of(KeyCanonicalizer.Mode.values()[mode]));
+        filter.numOfElmntsAdded = in.readInt();
+        return filter;
+    }
+
+    /**
+     * Create a filter with the given bits, as readFrom does.
+     * @param strategy the k hash functions
+     * @param canonicalizer turns the strings into the hashed bytes
+     * @param words the bits, bit i in bit i % 64 of words[i / 64]
+     * @param dataSize the number of keys added
+     * @return the filter
+     */
+    static HashedBloomFilter of(HashStrategy strategy, KeyCanonicalizer canonicalizer, long[] words, int dataSize) {
+        HashedBloomFilter filter = new HashedBloomFilter(strategy, canonicalizer);
+        filter.myBit.or(BitSet.valueOf(words));
+        filter.numOfElmntsAdded = dataSize;
+        return filter;
+    }
+
+    /**
+     * Get a copy of the bits of this filter.
+     * @return the bits, bit i in bit i % 64 of words[i / 64]
+     */
+    long[] words() {
+        return myBit.toLongArray();
+    }
+
+    /**
+     * Get the hash functions of this filter.
+     * @return the strategy
+     */
+    public final HashStrategy strategy() {
+        return strategy;
+    }
+}
@@ -0,0 +1,459 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class implements the hash functions used by the bloom filters, directly on bytes:
+ *  - FNV-1a (64 bit), byte at a time as specified, and a word at a time variant that mixes 8 bytes per multiply,
+ *  - MurmurHash3 x64_128,
+ *  - XXH3 (64 bit).
+ * Every function reads a slice (offset, length) of a byte[] or of a ByteBuffer, heap or direct, with
+ * little-endian VarHandle views, so no bytes are copied. Inputs of at most 240 bytes never allocate.
+ *
+ * reduce maps a 64-bit hash value to [0, n) for the filter index.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class Hashes {
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONG_LE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_INT_LE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    public static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    public static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashes() {
+    }
+
+    //=== range reduction =====================================================================================
+
+    /**
+     * Map a 64-bit hash value to [0, n) with Lemire's multiply-shift: the high 64 bits of the unsigned
+     * 128-bit product hash * n. Every output value is hit by either floor(2^64 / n) or ceil(2^64 / n) hash
+     * values, so for any n < 2^31 the bias is below 2^-32. Unlike Math.abs(hash) % n it never overflows
+     * and does not favour small values, and it uses the high bits of hash, which are the best mixed ones.
+     * @param hash a 64-bit hash value
+     * @param n the size of the range, n > 0
+     * @return a value in [0, n)
+     */
+    public static int reduce(long hash, int n) {
+        return (int) (Math.multiplyHigh(hash, n) + ((hash >> 63) & n));//unsigned high product, since n >= 0
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3: a one-to-one function whose every output bit depends on every input bit.
+     * @param k a value to mix
+     * @return the mixed value
+     */
+    public static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    //=== FNV-1a ==============================================================================================
+
+    /**
+     * FNV-1a 64-bit, one byte at a time, as specified.
+     * @param data the bytes to hash
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param basis the offset basis; FNV_OFFSET_BASIS gives the standard FNV-1a
+     * @return the hash value
+     */
+    public static long fnv1a64(byte[] data, int offset, int length, long basis) {
+        long hash = basis;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= data[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * FNV-1a 64-bit, a word at a time: every 8 bytes are xor-ed in as one little-endian word before the
+     * multiply, the remaining 0 to 7 bytes one at a time. This is 8 times fewer multiplies than fnv1a64 but
+     * gives different values. The multiply only carries the bits of a word upwards, so the low bits of the
+     * result depend only on the low bytes of every word: use fmix64 before taking low bits, or reduce,
+     * which takes the high bits.
+     * @param data the bytes to hash
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param basis the offset basis
+     * @return the hash value
+     */
+    public static long fnv1a64Words(byte[] data, int offset, int length, long basis) {
+        return fnv1a64Words(data, null, offset, length, basis);
+    }
+
+    /**
+     * Same as fnv1a64Words(byte[], int, int, long) on the bytes of a buffer, from the absolute index offset.
+     * The position and limit of the buffer are not used or changed.
+     */
+    public static long fnv1a64Words(ByteBuffer buffer, int offset, int length, long basis) {
+        if (buffer.hasArray())
+            return fnv1a64Words(buffer.array(), null, buffer.arrayOffset() + offset, length, basis);
+        return fnv1a64Words(null, buffer, offset, length, basis);
+    }
+
+    private static long fnv1a64Words(byte[] a, ByteBuffer b, int offset, int length, long basis) {
+        long hash = basis;
+        int i = offset;
+        int end = offset + length;
+        for (; i + 8 <= end; i += 8) {
+            hash ^= getLong(a, b, i);
+            hash *= FNV_PRIME;
+        }
+        for (; i < end; i++) {
+            hash ^= getByte(a, b, i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    //=== MurmurHash3 x64_128 =================================================================================
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * The first 64 bits of MurmurHash3 x64_128.
+     * @param data the bytes to hash
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param seed the seed; the reference implementation takes a 32-bit seed, given here as a long in [0, 2^32)
+     * @return h1 of the 128-bit hash value
+     */
+    public static long murmur3x64(byte[] data, int offset, int length, long seed) {
+        return murmur3x64_128(data, null, offset, length, seed, null);
+    }
+
+    /**
+     * MurmurHash3 x64_128.
+     * @param data the bytes to hash
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param seed the seed
+     * @param out receives h1 in out[0] and h2 in out[1]
+     * @return h1
+     */
+    public static long murmur3x64_128(byte[] data, int offset, int length, long seed, long[] out) {
+        return murmur3x64_128(data, null, offset, length, seed, out);
+    }
+
+    /**
+     * The first 64 bits of MurmurHash3 x64_128 of the bytes of a buffer, from the absolute index offset.
+     * The position and limit of the buffer are not used or changed.
+     */
+    public static long murmur3x64(ByteBuffer buffer, int offset, int length, long seed) {
+        if (buffer.hasArray())
+            return murmur3x64_128(buffer.array(), null, buffer.arrayOffset() + offset, length, seed, null);
+        return murmur3x64_128(null, buffer, offset, length, seed, null);
+    }
+
+    private static long murmur3x64_128(byte[] a, ByteBuffer b, int offset, int length, long seed, long[] out) {
+        long h1 = seed;
+        long h2 = seed;
+        int i = offset;
+        int end = offset + length;
+        for (; i + 16 <= end; i += 16) {
+            long k1 = getLong(a, b, i);
+            long k2 = getLong(a, b, i + 8);
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int tail = end - i;
+        if (tail > 8) {
+            long k2 = getPartialLong(a, b, i + 8, tail - 8);
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+        }
+        if (tail > 0) {
+            long k1 = getPartialLong(a, b, i, Math.min(8, tail));
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        if (out != null) {
+            out[0] = h1;
+            out[1] = h2;
+        }
+        return h1;
+    }
+
+    //=== XXH3 64 bit =========================================================================================
+
+    private static final long PRIME32_1 = 0x9E3779B1L;
+    private static final long PRIME32_2 = 0x85EBCA77L;
+    private static final long PRIME32_3 = 0xC2B2AE3DL;
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+    private static final long PRIME_MX1 = 0x165667919E3779F9L;
+    private static final long PRIME_MX2 = 0x9FB21C651E98DF25L;
+
+    private static final int SECRET_SIZE = 192;
+    private static final int STRIPE_LEN = 64;
+    private static final int SECRET_CONSUME_RATE = 8;
+    private static final int STRIPES_PER_BLOCK = (SECRET_SIZE - STRIPE_LEN) / SECRET_CONSUME_RATE;
+    private static final int BLOCK_LEN = STRIPE_LEN * STRIPES_PER_BLOCK;
+    private static final int MIDSIZE_MAX = 240;
+
+    private static final byte[] DEFAULT_SECRET = toBytes(new int[] {
+        0xb8, 0xfe, 0x6c, 0x39, 0x23, 0xa4, 0x4b, 0xbe, 0x7c, 0x01, 0x81, 0x2c, 0xf7, 0x21, 0xad, 0x1c,
+        0xde, 0xd4, 0x6d, 0xe9, 0x83, 0x90, 0x97, 0xdb, 0x72, 0x40, 0xa4, 0xa4, 0xb7, 0xb3, 0x67, 0x1f,
+        0xcb, 0x79, 0xe6, 0x4e, 0xcc, 0xc0, 0xe5, 0x78, 0x82, 0x5a, 0xd0, 0x7d, 0xcc, 0xff, 0x72, 0x21,
+        0xb8, 0x08, 0x46, 0x74, 0xf7, 0x43, 0x24, 0x8e, 0xe0, 0x35, 0x90, 0xe6, 0x81, 0x3a, 0x26, 0x4c,
+        0x3c, 0x28, 0x52, 0xbb, 0x91, 0xc3, 0x00, 0xcb, 0x88, 0xd0, 0x65, 0x8b, 0x1b, 0x53, 0x2e, 0xa3,
+        0x71, 0x64, 0x48, 0x97, 0xa2, 0x0d, 0xf9, 0x4e, 0x38, 0x19, 0xef, 0x46, 0xa9, 0xde, 0xac, 0xd8,
+        0xa8, 0xfa, 0x76, 0x3f, 0xe3, 0x9c, 0x34, 0x3f, 0xf9, 0xdc, 0xbb, 0xc7, 0xc7, 0x0b, 0x4f, 0x1d,
+        0x8a, 0x51, 0xe0, 0x4b, 0xcd, 0xb4, 0x59, 0x31, 0xc8, 0x9f, 0x7e, 0xc9, 0xd9, 0x78, 0x73, 0x64,
+        0xea, 0xc5, 0xac, 0x83, 0x34, 0xd3, 0xeb, 0xc3, 0xc5, 0x81, 0xa0, 0xff, 0xfa, 0x13, 0x63, 0xeb,
+        0x17, 0x0d, 0xdd, 0x51, 0xb7, 0xf0, 0xda, 0x49, 0xd3, 0x16, 0x55, 0x26, 0x29, 0xd4, 0x68, 0x9e,
+        0x2b, 0x16, 0xbe, 0x58, 0x7d, 0x47, 0xa1, 0xfc, 0x8f, 0xf8, 0xb8, 0xd1, 0x7a, 0xd0, 0x31, 0xce,
+        0x45, 0xcb, 0x3a, 0x8f, 0x95, 0x16, 0x04, 0x28, 0xaf, 0xd7, 0xfb, 0xca, 0xbb, 0x4b, 0x40, 0x7e,
+    });
+
+    /**
+     * XXH3 64-bit with the default secret.
+     * @param data the bytes to hash
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param seed the seed; 0 gives the unseeded XXH3_64bits
+     * @return the hash value
+     */
+    public static long xxh3(byte[] data, int offset, int length, long seed) {
+        return xxh3(data, null, offset, length, seed);
+    }
+
+    /**
+     * XXH3 64-bit of the bytes of a buffer, from the absolute index offset.
+     * The position and limit of the buffer are not used or changed.
+     */
+    public static long xxh3(ByteBuffer buffer, int offset, int length, long seed) {
+        if (buffer.hasArray())
+            return xxh3(buffer.array(), null, buffer.arrayOffset() + offset, length, seed);
+        return xxh3(null, buffer, offset, length, seed);
+    }
+
+    private static long xxh3(byte[] a, ByteBuffer b, int off, int len, long seed) {
+        byte[] s = DEFAULT_SECRET;
+        if (len <= 16) {
+            if (len > 8) {
+                long bitflip1 = (getLong(s, 24) ^ getLong(s, 32)) + seed;
+                long bitflip2 = (getLong(s, 40) ^ getLong(s, 48)) - seed;
+                long inputLo = getLong(a, b, off) ^ bitflip1;
+                long inputHi = getLong(a, b, off + len - 8) ^ bitflip2;
+                long acc = len + Long.reverseBytes(inputLo) + inputHi + mul128Fold64(inputLo, inputHi);
+                return xxh3Avalanche(acc);
+            }
+            if (len >= 4) {
+                seed ^= (long) Integer.reverseBytes((int) seed) << 32;
+                long input1 = getInt(a, b, off);
+                long input2 = getInt(a, b, off + len - 4);
+                long bitflip = (getLong(s, 8) ^ getLong(s, 16)) - seed;
+                long input64 = input2 + (input1 << 32);
+                return rrmxmx(input64 ^ bitflip, len);
+            }
+            if (len > 0) {
+                long c1 = getByte(a, b, off);
+                long c2 = getByte(a, b, off + (len >> 1));
+                long c3 = getByte(a, b, off + len - 1);
+                long combined = (c1 << 16) | (c2 << 24) | c3 | ((long) len << 8);
+                long bitflip = ((getInt(s, 0) ^ getInt(s, 4)) & 0xffffffffL) + seed;
+                return xxh64Avalanche(combined ^ bitflip);
+            }
+            return xxh64Avalanche(seed ^ getLong(s, 56) ^ getLong(s, 64));
+        }
+        if (len <= 128) {
+            long acc = len * PRIME64_1;
+            if (len > 32) {
+                if (len > 64) {
+                    if (len > 96) {
+                        acc += mix16B(a, b, off + 48, s, 96, seed);
+                        acc += mix16B(a, b, off + len - 64, s, 112, seed);
+                    }
+                    acc += mix16B(a, b, off + 32, s, 64, seed);
+                    acc += mix16B(a, b, off + len - 48, s, 80, seed);
+                }
+                acc += mix16B(a, b, off + 16, s, 32, seed);
+                acc += mix16B(a, b, off + len - 32, s, 48, seed);
+            }
+            acc += mix16B(a, b, off, s, 0, seed);
+            acc += mix16B(a, b, off + len - 16, s, 16, seed);
+            return xxh3Avalanche(acc);
+        }
+        if (len <= MIDSIZE_MAX) {
+            long acc = len * PRIME64_1;
+            int rounds = len / 16;
+            for (int i = 0; i < 8; i++)
+                acc += mix16B(a, b, off + 16 * i, s, 16 * i, seed);
+            acc = xxh3Avalanche(acc);
+            for (int i = 8; i < rounds; i++)
+                acc += mix16B(a, b, off + 16 * i, s, 16 * (i - 8) + 3, seed);
+            acc += mix16B(a, b, off + len - 16, s, 136 - 17, seed);
+            return xxh3Avalanche(acc);
+        }
+        return xxh3Long(a, b, off, len, seed == 0 ? s : customSecret(seed));
+    }
+
+    /**
+     * XXH3 of inputs longer than 240 bytes: stripes of 64 bytes are accumulated into 8 lanes, and the lanes
+     * are scrambled after every block of STRIPES_PER_BLOCK stripes.
+     */
+    private static long xxh3Long(byte[] a, ByteBuffer b, int off, int len, byte[] s) {
+        long[] acc = {PRIME32_3, PRIME64_1, PRIME64_2, PRIME64_3, PRIME64_4, PRIME32_2, PRIME64_5, PRIME32_1};
+        int blocks = (len - 1) / BLOCK_LEN;
+        for (int n = 0; n < blocks; n++) {
+            for (int stripe = 0; stripe < STRIPES_PER_BLOCK; stripe++)
+                accumulate512(acc, a, b, off + n * BLOCK_LEN + stripe * STRIPE_LEN, s, stripe * SECRET_CONSUME_RATE);
+            for (int i = 0; i < 8; i++) {//scramble
+                long lane = acc[i];
+                lane ^= lane >>> 47;
+                lane ^= getLong(s, SECRET_SIZE - STRIPE_LEN + 8 * i);
+                acc[i] = lane * PRIME32_1;
+            }
+        }
+        int stripes = ((len - 1) - BLOCK_LEN * blocks) / STRIPE_LEN;
+        for (int stripe = 0; stripe < stripes; stripe++)
+            accumulate512(acc, a, b, off + blocks * BLOCK_LEN + stripe * STRIPE_LEN, s, stripe * SECRET_CONSUME_RATE);
+        accumulate512(acc, a, b, off + len - STRIPE_LEN, s, SECRET_SIZE - STRIPE_LEN - 7);
+
+        long result = len * PRIME64_1;
+        for (int i = 0; i < 4; i++)
+            result += mul128Fold64(acc[2 * i] ^ getLong(s, 11 + 16 * i), acc[2 * i + 1] ^ getLong(s, 11 + 16 * i + 8));
+        return xxh3Avalanche(result);
+    }
+
+    private static void accumulate512(long[] acc, byte[] a, ByteBuffer b, int in, byte[] s, int secretOffset) {
+        for (int i = 0; i < 8; i++) {
+            long dataVal = getLong(a, b, in + 8 * i);
+            long dataKey = dataVal ^ getLong(s, secretOffset + 8 * i);
+            acc[i ^ 1] += dataVal;
+            acc[i] += (dataKey & 0xffffffffL) * (dataKey >>> 32);
+        }
+    }
+
+    /**
+     * The secret XXH3 derives from a nonzero seed for inputs longer than 240 bytes.
+     */
+    private static byte[] customSecret(long seed) {
+        byte[] secret = new byte[SECRET_SIZE];
+        for (int i = 0; i < SECRET_SIZE / 16; i++) {
+            LONG_LE.set(secret, 16 * i, getLong(DEFAULT_SECRET, 16 * i) + seed);
+            LONG_LE.set(secret, 16 * i + 8, getLong(DEFAULT_SECRET, 16 * i + 8) - seed);
+        }
+        return secret;
+    }
+
+    private static long mix16B(byte[] a, ByteBuffer b, int in, byte[] s, int secretOffset, long seed) {
+        long inputLo = getLong(a, b, in);
+        long inputHi = getLong(a, b, in + 8);
+        return mul128Fold64(inputLo ^ (getLong(s, secretOffset) + seed), inputHi ^ (getLong(s, secretOffset + 8) - seed));
+    }
+
+    /**
+     * The xor of the low and the high 64 bits of the unsigned 128-bit product lhs * rhs.
+     */
+    private static long mul128Fold64(long lhs, long rhs) {
+        long high = Math.multiplyHigh(lhs, rhs) + ((lhs >> 63) & rhs) + ((rhs >> 63) & lhs);
+        return (lhs * rhs) ^ high;
+    }
+
+    private static long xxh64Avalanche(long h) {
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        return h ^ (h >>> 32);
+    }
+
+    private static long xxh3Avalanche(long h) {
+        h ^= h >>> 37;
+        h *= PRIME_MX1;
+        return h ^ (h >>> 32);
+    }
+
+    private static long rrmxmx(long h, int len) {
+        h ^= Long.rotateLeft(h, 49) ^ Long.rotateLeft(h, 24);
+        h *= PRIME_MX2;
+        h ^= (h >>> 35) + len;
+        h *= PRIME_MX2;
+        return h ^ (h >>> 28);
+    }
+
+    //=== little-endian reads =================================================================================
+    //Exactly one of a and b is not null: the bytes are read from the array a, or else from the buffer b.
+
+    private static long getLong(byte[] a, ByteBuffer b, int i) {
+        return a != null ? (long) LONG_LE.get(a, i) : (long) BUFFER_LONG_LE.get(b, i);
+    }
+
+    private static long getInt(byte[] a, ByteBuffer b, int i) {
+        return (a != null ? (int) INT_LE.get(a, i) : (int) BUFFER_INT_LE.get(b, i)) & 0xffffffffL;
+    }
+
+    private static int getByte(byte[] a, ByteBuffer b, int i) {
+        return (a != null ? a[i] : b.get(i)) & 0xff;
+    }
+
+    /**
+     * Read count < 8 bytes (or exactly 8) as a little-endian value.
+     */
+    private static long getPartialLong(byte[] a, ByteBuffer b, int i, int count) {
+        if (count == 8)
+            return getLong(a, b, i);
+        long value = 0;
+        for (int j = count - 1; j >= 0; j--)
+            value = (value << 8) | getByte(a, b, i + j);
+        return value;
+    }
+
+    private static long getLong(byte[] a, int i) {
+        return (long) LONG_LE.get(a, i);
+    }
+
+    private static int getInt(byte[] a, int i) {
+        return (int) INT_LE.get(a, i);
+    }
+
+    private static byte[] toBytes(int[] values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            bytes[i] = (byte) values[i];
+        return bytes;
+    }
+}
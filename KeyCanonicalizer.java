@@ -0,0 +1,225 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class turns keys into the bytes that are hashed by a bloom filter and compared with the keys of the
+ * records in a file, so that a lookup canonicalizes its key once and uses the same bytes for both.
+ * The canonical form of a key is its text without whitespace, case-folded according to the mode, in UTF-8:
+ *  - CASE_SENSITIVE: no folding, records match only with the exact case;
+ *  - LOWER_CASE: String.toLowerCase(Locale.ROOT), the same in every locale;
+ *  - UNICODE_FOLD: toUpperCase then toLowerCase (Locale.ROOT), which also folds characters whose upper case
+ *    has several characters, such as "ß" and "ss".
+ * Keys and lines that are all ASCII are folded byte by byte without creating Strings; the others take the
+ * String methods. Files are compared as UTF-8 (or ASCII) bytes.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public final class KeyCanonicalizer {
+
+    public enum Mode { CASE_SENSITIVE, LOWER_CASE, UNICODE_FOLD }
+
+    public static final KeyCanonicalizer CASE_SENSITIVE = new KeyCanonicalizer(Mode.CASE_SENSITIVE);
+    public static final KeyCanonicalizer LOWER_CASE = new KeyCanonicalizer(Mode.LOWER_CASE);
+    public static final KeyCanonicalizer UNICODE_FOLD = new KeyCanonicalizer(Mode.UNICODE_FOLD);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");//compiled once, not on every lookup
+
+    private final Mode mode;
+    private final boolean folds;
+
+    private KeyCanonicalizer(Mode mode) {
+        this.mode = mode;
+        folds = mode != Mode.CASE_SENSITIVE;
+    }
+
+    /**
+     * Get the canonicalizer of a mode.
+     * @param mode the mode
+     * @return the canonicalizer
+     */
+    public static KeyCanonicalizer of(Mode mode) {
+        switch (mode) {
+            case CASE_SENSITIVE:
+                return CASE_SENSITIVE;
+            case LOWER_CASE:
+                return LOWER_CASE;
+            default:
+                return UNICODE_FOLD;
+        }
+    }
+
+    /**
+     * Get the mode of this canonicalizer.
+     * @return the mode
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Get the canonical bytes of a lookup key: the key without whitespace, folded.
+     * @param key the key, e.g. "word1 word2 word3 word4"
+     * @return the canonical bytes of the key
+     */
+    public byte[] canonicalize(CharSequence key) {
+        return encode(key, true);
+    }
+
+    /**
+     * Get the folded bytes of a string, keeping its whitespace. This is what a bloom filter hashes for add and
+     * appears; for a key without whitespace it equals canonicalize.
+     * @param s a string
+     * @return the folded bytes of s
+     */
+    public byte[] fold(CharSequence s) {
+        return encode(s, false);
+    }
+
+    /**
+     * Remove the whitespace (the characters matched by \s) of a key, as key.replaceAll("\\s+", "") without
+     * compiling a regular expression on every call.
+     * @param key the key
+     * @return the key without whitespace
+     */
+    public static String stripWhitespace(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (isWhitespace(key.charAt(i)))
+                return WHITESPACE.matcher(key).replaceAll("");
+        }
+        return key;
+    }
+
+    private byte[] encode(CharSequence s, boolean strip) {
+        int n = s.length();
+        byte[] out = new byte[n];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80)
+                return encodeString(s, strip);
+            if (strip && isWhitespace(c))
+                continue;
+            out[j++] = (byte) (folds ? toLower(c) : c);
+        }
+        return j == n ? out : Arrays.copyOf(out, j);
+    }
+
+    private byte[] encodeString(CharSequence s, boolean strip) {
+        String t = strip ? WHITESPACE.matcher(s).replaceAll("") : s.toString();
+        return foldString(t).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String foldString(String t) {
+        switch (mode) {
+            case LOWER_CASE:
+                return t.toLowerCase(Locale.ROOT);
+            case UNICODE_FOLD:
+                return t.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+            default:
+                return t;
+        }
+    }
+
+    /**
+     * Get the canonical bytes of the key of a line of a file: its first 4 words (see BloomDifferential.keyOf)
+     * without whitespace, folded.
+     * @param buf the buffer of the line
+     * @param start the index of the first byte of the line
+     * @param end the index after the last byte of the line
+     * @return the canonical bytes of the key of the line
+     */
+    public byte[] lineKey(ByteBuffer buf, int start, int end) {
+        int keyEnd = keyEnd(buf, start, end);
+        byte[] key = new byte[keyEnd - start];
+        int j = 0;
+        boolean ascii = true;
+        for (int i = start; i < keyEnd; i++) {
+            byte b = buf.get(i);
+            if (b >= 0 && isWhitespace((char) b))
+                continue;
+            ascii &= b >= 0;
+            key[j++] = (byte) (folds && b >= 0 ? toLower((char) b) : b);
+        }
+        if (!ascii && folds)
+            return foldString(new String(key, 0, j, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+        return j == key.length ? key : Arrays.copyOf(key, j);
+    }
+
+    /**
+     * Get the end of the key of a line: as line.split(" ", 5) in BloomDifferential.keyOf, the key is made of
+     * the words before its 4th space, or before its last space if it has fewer than 4.
+     */
+    private static int keyEnd(ByteBuffer buf, int start, int end) {
+        int spaces = 0;
+        int lastSpace = start;
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == ' ') {
+                if (++spaces == 4)
+                    return i;
+                lastSpace = i;
+            }
+        }
+        return lastSpace;
+    }
+
+    /**
+     * Check whether the key of a line has the canonical bytes key, without decoding the line.
+     * The bytes of the line are folded as they are compared; a folding canonicalizer meeting a non-ASCII byte
+     * in the key of the line compares lineKey instead.
+     * @param buf the buffer of the line
+     * @param start the index of the first byte of the line
+     * @param end the index after the last byte of the line
+     * @param key canonical bytes from canonicalize
+     * @return true if the canonical key of the line is key
+     */
+    public boolean keyEquals(ByteBuffer buf, int start, int end, byte[] key) {
+        int j = 0;//the bytes of key matched so far
+        int matchedAtSpace = 0;//the bytes of key matched before the last space
+        int spaces = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (b == ' ') {
+                if (++spaces == 4)
+                    return j == key.length;
+                matchedAtSpace = j;
+                continue;
+            }
+            if (b >= 0 && isWhitespace((char) b))
+                continue;
+            if (b < 0 && folds)
+                return Arrays.equals(lineKey(buf, start, end), key);
+            byte c = folds ? (byte) toLower((char) b) : b;
+            if (j < key.length && c == key[j]) {
+                j++;
+                continue;
+            }
+            //c is not the next byte of key. It is part of the key of the line only if a space follows it
+            for (int s = i + 1; s < end; s++)
+                if (buf.get(s) == ' ')
+                    return false;
+            return matchedAtSpace == key.length;//the key of the line ended at the last space
+        }
+        return matchedAtSpace == key.length;
+    }
+
+    private static char toLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Check whether an ASCII character is whitespace for \s: space, \t, \n, \u000B, \f or \r.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    @Override
+    public String toString() {
+        return mode.toString();
+    }
+}
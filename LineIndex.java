@@ -0,0 +1,290 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class indexes the lines of a text file by their byte offsets, so that any line can be read in O(1)
+ * without reading the lines before it, and the number of lines is known exactly.
+ * The index is built in one pass over the file (newlines are found as in LineScanner). It stores the length of
+ * every line, line break included, as a varint (1 byte for lines shorter than 128 bytes, 2 below 16 KB), and
+ * the absolute offset of every SAMPLE-th line; the offset of a line is the sampled offset before it plus at
+ * most SAMPLE - 1 lengths. That is a little more than 1 byte per line for the key files instead of 8 for a
+ * long[] of offsets.
+ *
+ * open saves the index next to the file, in fileName + ".idx":
+ *  MAGIC "LIX1", the length and the last modification time of the file, the number of lines, the number of
+ *  bytes of lengths, and the varint lengths.
+ * The sampled offsets are rebuilt from the lengths when the index is loaded. An index whose file has changed
+ * since is rebuilt.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public final class LineIndex implements AutoCloseable {
+
+    static final int MAGIC = 0x4c495831;//"LIX1"
+    static final int SAMPLE = 64;//lines between two sampled offsets
+
+    private final String fileName;
+    private final long fileLength;
+    private final int numLines;
+    private final byte[] lengths;//the varint length of every line
+    private final long[] sampleOffsets;//the offset of line i * SAMPLE
+    private final int[] samplePositions;//the position in lengths of the length of line i * SAMPLE
+    private volatile FileChannel channel;//opened by the first line read, see channel()
+
+    private LineIndex(String fileName, long fileLength, int numLines, byte[] lengths) throws IOException {
+        this.fileName = fileName;
+        this.fileLength = fileLength;
+        this.numLines = numLines;
+        this.lengths = lengths;
+        int numSamples = (numLines + SAMPLE - 1) / SAMPLE;
+        sampleOffsets = new long[numSamples];
+        samplePositions = new int[numSamples];
+        long offset = 0;
+        int[] pos = {0};
+        for (int line = 0; line < numLines; line++) {
+            if (line % SAMPLE == 0) {
+                sampleOffsets[line / SAMPLE] = offset;
+                samplePositions[line / SAMPLE] = pos[0];
+            }
+            offset += readVarint(lengths, pos);
+        }
+        if (offset != fileLength || pos[0] != lengths.length)
+            throw new IOException("the index of " + fileName + " does not match its " + fileLength + " bytes");
+    }
+
+    /**
+     * Get the index of a file: load fileName + ".idx" if it was saved for the current content of the file,
+     * otherwise build it and save it there (if the directory is not writable, the index is only kept in memory).
+     * @param fileName the text file
+     * @return the index
+     * @throws IOException if the file cannot be read
+     */
+    public static LineIndex open(String fileName) throws IOException {
+        String indexFile = fileName + ".idx";
+        if (new File(indexFile).exists()) {
+            try {
+                return load(fileName, indexFile);
+            } catch (IOException e) {
+                System.out.println("Exception in getFileContents(" + indexFile + "), msg=" + e + ", rebuilding it");
+            }
+        }
+        LineIndex index = build(fileName);
+        try {
+            index.save(indexFile);
+        } catch (IOException e) {
+            System.out.println("Exception in getFileContents(" + indexFile + "), msg=" + e);
+        }
+        return index;
+    }
+
+    /**
+     * Build the index of a file in one pass.
+     * @param fileName the text file
+     * @return the index
+     * @throws IOException if the file cannot be read
+     */
+    public static LineIndex build(String fileName) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(LineScanner.DEFAULT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] lengths = new byte[1 << 16];
+        int size = 0;
+        int numLines = 0;
+        long position = 0;
+        long lineStart = 0;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            while (true) {
+                buffer.clear();
+                int n;
+                do {
+                    n = channel.read(buffer, position + buffer.position());
+                } while (n >= 0 && buffer.hasRemaining());
+                buffer.flip();
+                int limit = buffer.limit();
+                int from = 0;
+                int newline;
+                while ((newline = LineScanner.nextNewline(buffer, from, limit)) >= 0) {
+                    long lineEnd = position + newline + 1;
+                    if (size + 10 > lengths.length)
+                        lengths = Arrays.copyOf(lengths, lengths.length * 2);
+                    size = writeVarint(lengths, size, lineEnd - lineStart);
+                    numLines++;
+                    lineStart = lineEnd;
+                    from = newline + 1;
+                }
+                position += limit;
+                if (n < 0)
+                    break;
+            }
+        }
+        if (lineStart < position) {//the last line has no line break
+            if (size + 10 > lengths.length)
+                lengths = Arrays.copyOf(lengths, lengths.length + 10);
+            size = writeVarint(lengths, size, position - lineStart);
+            numLines++;
+        }
+        return new LineIndex(fileName, position, numLines, Arrays.copyOf(lengths, size));
+    }
+
+    /**
+     * Load an index saved by save.
+     * @param fileName the text file
+     * @param indexFile the file of the index
+     * @return the index
+     * @throws IOException if the index cannot be read, or the text file has changed since it was saved
+     */
+    public static LineIndex load(String fileName, String indexFile) throws IOException {
+        File file = new File(fileName);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(indexFile + " is not a line index");
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            if (length != file.length() || lastModified != file.lastModified())
+                throw new IOException(fileName + " has changed since " + indexFile + " was saved");
+            int numLines = in.readInt();
+            int size = in.readInt();
+            if (numLines < 0 || size < numLines || size > 10L * numLines)
+                throw new IOException(indexFile + " is corrupted");
+            byte[] lengths = new byte[size];
+            in.readFully(lengths);
+            if (size > 0 && lengths[size - 1] < 0)//the last varint does not end
+                throw new IOException(indexFile + " is corrupted");
+            return new LineIndex(fileName, length, numLines, lengths);
+        }
+    }
+
+    /**
+     * Save this index, to be loaded by load while the text file does not change.
+     * @param indexFile the file of the index
+     * @throws IOException if the index cannot be written
+     */
+    public void save(String indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(fileLength);
+            out.writeLong(new File(fileName).lastModified());
+            out.writeInt(numLines);
+            out.writeInt(lengths.length);
+            out.write(lengths);
+        }
+    }
+
+    /**
+     * Get the number of lines of the file.
+     * @return the number of lines, as counted by BufferedReader.readLine for files whose lines end with '\n'
+     */
+    public int numLines() {
+        return numLines;
+    }
+
+    /**
+     * Get the offset of a line.
+     * @param line the line number, from 0
+     * @return the offset of its first byte in the file; numLines() gives the length of the file
+     * @throws IndexOutOfBoundsException if line is not in [0, numLines()]
+     */
+    public long offset(int line) {
+        if (line == numLines)
+            return fileLength;
+        if (line < 0 || line > numLines)
+            throw new IndexOutOfBoundsException("line " + line + " of " + numLines);
+        int sample = line / SAMPLE;
+        long offset = sampleOffsets[sample];
+        int[] pos = {samplePositions[sample]};
+        for (int i = sample * SAMPLE; i < line; i++)
+            offset += readVarint(lengths, pos);
+        return offset;
+    }
+
+    /**
+     * Read a line.
+     * @param line the line number, from 0
+     * @return the line without its line break
+     * @throws IOException if the file cannot be read
+     * @throws IndexOutOfBoundsException if line is not in [0, numLines())
+     */
+    public String line(int line) throws IOException {
+        if (line < 0 || line >= numLines)
+            throw new IndexOutOfBoundsException("line " + line + " of " + numLines);
+        long start = offset(line);
+        long end = offset(line + 1);
+        FileChannel channel = channel();
+        ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, start + bytes.position()) < 0)
+                throw new IOException(fileName + " is shorter than its index");
+        }
+        int length = bytes.position();
+        if (length > 0 && bytes.get(length - 1) == '\n')
+            length--;
+        if (length > 0 && bytes.get(length - 1) == '\r')
+            length--;
+        return new String(bytes.array(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the channel of the file, opening it on the first call. Lines are read concurrently with positional
+     * reads, so the only shared state is the channel, which is opened once.
+     * @return the channel
+     * @throws IOException if the file cannot be opened
+     */
+    private FileChannel channel() throws IOException {
+        FileChannel opened = channel;
+        if (opened == null) {
+            synchronized (this) {
+                opened = channel;
+                if (opened == null)
+                    channel = opened = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+            }
+        }
+        return opened;
+    }
+
+    @Override
+    public String toString() {
+        return fileName;
+    }
+
+    private static int writeVarint(byte[] buf, int pos, long v) {
+        while ((v & ~0x7fL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return pos;
+    }
+
+    private static long readVarint(byte[] buf, int[] pos) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf[pos[0]++];
+            v |= (long) (b & 0x7f) << shift;
+            if (b >= 0)
+                return v;
+        }
+    }
+
+    /**
+     * Close the file opened to read lines.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null)
+            channel.close();
+    }
+}
@@ -0,0 +1,319 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class scans the lines of a file sequentially without decoding them into Strings.
+ * A background thread reads the file through a FileChannel into two large direct buffers in turn, so the next
+ * buffer is read while the lines of the current one are scanned (double buffering). Newlines are found 8 bytes
+ * at a time, and the key of a line is compared with the canonical bytes of the searched key directly in the
+ * buffer (see KeyCanonicalizer.keyEquals); only the line that is found is decoded.
+ *
+ * Files are read as UTF-8, which includes ASCII. Lines end at '\n', and a '\r' before it is dropped.
+ *
+ * A LineScanner runs one scan at a time; forCurrentThread gives every thread its own. The reader thread exits
+ * after READER_IDLE_SECONDS without a scan, so the scanner of a thread that has ended holds no thread and is
+ * collected with its buffers; code that scans from a pool of its own threads should keep its own scanners
+ * instead (see PipelinedLookup).
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public final class LineScanner implements AutoCloseable {
+
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    static final int READER_IDLE_SECONDS = 10;
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);//put by the reader after the last buffer
+    private static final ThreadLocal<LineScanner> SCANNERS = ThreadLocal.withInitial(() -> new LineScanner(DEFAULT_BUFFER_SIZE));
+
+    /**
+     * Receives the lines of a scan.
+     */
+    public interface LineVisitor {
+        /**
+         * Visit a line, the bytes [start, end) of buf, without its line break.
+         * @return true to continue the scan, false to stop it
+         */
+        boolean visit(ByteBuffer buf, int start, int end);
+    }
+
+    private final ByteBuffer[] buffers = new ByteBuffer[2];
+    private final BlockingQueue<ByteBuffer> empty = new ArrayBlockingQueue<ByteBuffer>(2);
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(3);
+    private final ThreadPoolExecutor reader;
+    private volatile boolean stopped;
+    private volatile IOException readError;
+    private Future<?> reading;//the reader task of the last scan
+    private ByteBuffer carry = ByteBuffer.allocate(1 << 12);//a line that continues in the next buffer
+
+    /**
+     * Create a scanner with two direct buffers and a reader thread.
+     * @param bufferSize the size of each buffer in bytes
+     */
+    public LineScanner(int bufferSize) {
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        reader = new ThreadPoolExecutor(1, 1, READER_IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+            Thread t = new Thread(r, "read-ahead");
+            t.setDaemon(true);
+            return t;
+        });
+        reader.allowCoreThreadTimeOut(true);//the thread is started again by the next scan
+    }
+
+    /**
+     * Get the scanner of the calling thread.
+     * @return a scanner used only by this thread
+     */
+    public static LineScanner forCurrentThread() {
+        return SCANNERS.get();
+    }
+
+    /**
+     * Find the first line of a file whose key is myKey, where the key of a line is its first 4 words
+     * concatenated, as in BloomDifferential.keyOf.
+     * @param fileName the file to scan
+     * @param myKey the key without whitespace, "word1word2word3word4"
+     * @return the line, or null if no line has the key
+     * @throws IOException if the file cannot be read
+     */
+    public String find(String fileName, String myKey) throws IOException {
+        return find(fileName, KeyCanonicalizer.CASE_SENSITIVE.canonicalize(myKey), KeyCanonicalizer.CASE_SENSITIVE);
+    }
+
+    /**
+     * Find the first line of a file whose canonical key is key.
+     * @param fileName the file to scan
+     * @param key canonical bytes of the key, from canonicalizer.canonicalize
+     * @param canonicalizer the canonicalizer of key, which folds the keys of the lines
+     * @return the line, or null if no line has the key
+     * @throws IOException if the file cannot be read
+     */
+    public String find(String fileName, byte[] key, KeyCanonicalizer canonicalizer) throws IOException {
+        String[] found = new String[1];
+        scan(fileName, (buf, start, end) -> {
+            if (!canonicalizer.keyEquals(buf, start, end, key))
+                return true;
+            found[0] = decode(buf, start, end);
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * Decode a line that was found.
+     * @param buf the buffer of the line
+     * @param start the index of the first byte of the line
+     * @param end the index after the last byte of the line
+     * @return the line
+     */
+    static String decode(ByteBuffer buf, int start, int end) {
+        byte[] line = new byte[end - start];
+        buf.get(start, line);
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Visit every line of a file in order until the visitor stops the scan.
+     * @param fileName the file to scan
+     * @param visitor receives the lines
+     * @return the number of bytes read
+     * @throws IOException if the file cannot be read
+     */
+    public long scan(String fileName, LineVisitor visitor) throws IOException {
+        return scan(fileName, 0, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Visit the lines of the bytes [start, end) of a file in order until the visitor stops the scan. start and
+     * end should be offsets of line starts (see LineIndex), so that several threads can scan one file in parts.
+     * @param fileName the file to scan
+     * @param start the offset of the first byte scanned
+     * @param end the offset after the last byte scanned, or Long.MAX_VALUE for the end of the file
+     * @param visitor receives the lines
+     * @return the number of bytes read
+     * @throws IOException if the file cannot be read
+     */
+    public long scan(String fileName, long start, long end, LineVisitor visitor) throws IOException {
+        long bytesRead = 0;
+        awaitReader();
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            stopped = false;
+            readError = null;
+            empty.clear();
+            full.clear();
+            for (ByteBuffer buffer : buffers)
+                empty.add(buffer);
+            carry.clear();
+            reading = reader.submit(() -> readAll(channel, start, end));
+            boolean scanning = true;
+            boolean finished = false;
+            try {
+                while (true) {
+                    ByteBuffer buffer = full.take();
+                    if (buffer == END)
+                        break;
+                    bytesRead += buffer.remaining();
+                    if (scanning && !scanBuffer(buffer, visitor)) {
+                        scanning = false;
+                        stopped = true;//the reader stops after its current read; the buffers still coming are skipped
+                    }
+                    empty.put(buffer);
+                }
+                if (scanning && carry.position() > 0)//the last line has no line break
+                    visit(carry, 0, carry.position(), visitor);
+                reading.get();
+                reading = null;
+                finished = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("scan of " + fileName + " interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                if (!finished) {//wake the reader if it waits for a buffer; the next scan waits for it to end
+                    stopped = true;
+                    empty.offer(buffers[0]);
+                }
+            }
+        }
+        if (readError != null)
+            throw readError;
+        return bytesRead;
+    }
+
+    /**
+     * Wait until the reader of an abandoned scan has ended, so that it does not use the queues of the next scan.
+     */
+    private void awaitReader() throws IOException {
+        if (reading == null)
+            return;
+        try {
+            reading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("waiting for the previous scan");
+        } catch (ExecutionException e) {
+            //the error was reported by the previous scan
+        }
+        reading = null;
+    }
+
+    /**
+     * Fill the empty buffers from the bytes [start, end) of the channel and hand them to the scan.
+     */
+    private void readAll(FileChannel channel, long start, long end) {
+        try {
+            long position = start;
+            while (!stopped && position < end) {
+                ByteBuffer buffer = empty.take();
+                if (stopped)
+                    break;
+                buffer.clear();
+                if (end - position < buffer.capacity())
+                    buffer.limit((int) (end - position));
+                int n;
+                do {
+                    n = channel.read(buffer, position + buffer.position());
+                } while (n >= 0 && buffer.hasRemaining());
+                buffer.flip();
+                position += buffer.remaining();
+                if (buffer.hasRemaining())
+                    full.put(buffer);
+                else
+                    empty.put(buffer);
+                if (n < 0)
+                    break;
+            }
+        } catch (IOException e) {
+            readError = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            full.add(END);//full has room for both buffers and END
+        }
+    }
+
+    /**
+     * Visit the lines of a buffer. The part after its last line break is kept in carry for the next buffer.
+     * @return false if the visitor stopped the scan
+     */
+    private boolean scanBuffer(ByteBuffer buffer, LineVisitor visitor) {
+        int limit = buffer.limit();
+        int start = buffer.position();
+        int newline;
+        while ((newline = nextNewline(buffer, start, limit)) >= 0) {
+            boolean more;
+            if (carry.position() > 0) {//the line started in the previous buffer
+                append(buffer, start, newline);
+                more = visit(carry, 0, carry.position(), visitor);
+                carry.clear();
+            } else {
+                more = visit(buffer, start, newline, visitor);
+            }
+            if (!more)
+                return false;
+            start = newline + 1;
+        }
+        append(buffer, start, limit);
+        return true;
+    }
+
+    private static boolean visit(ByteBuffer buf, int start, int end, LineVisitor visitor) {
+        if (end > start && buf.get(end - 1) == '\r')
+            end--;
+        return visitor.visit(buf, start, end);
+    }
+
+    private void append(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (carry.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(carry.capacity() * 2, carry.position() + length));
+            carry.flip();
+            larger.put(carry);
+            carry = larger;
+        }
+        carry.put(carry.position(), buffer, start, length);
+        carry.position(carry.position() + length);
+    }
+
+    /**
+     * Find the next '\n' in [from, limit). Whole words are tested with the "has zero byte" trick on
+     * word ^ 0x0a0a...: the lowest byte flagged in (w - 0x0101...) & ~w & 0x8080... is the first zero byte.
+     * @return the index of the '\n', or -1 if there is none
+     */
+    static int nextNewline(ByteBuffer buf, int from, int limit) {
+        for (; from + 8 <= limit; from += 8) {
+            long w = buf.getLong(from) ^ 0x0a0a0a0a0a0a0a0aL;//little-endian: byte i of the word is buf[from + i]
+            long t = (w - 0x0101010101010101L) & ~w & 0x8080808080808080L;
+            if (t != 0)
+                return from + (Long.numberOfTrailingZeros(t) >>> 3);
+        }
+        for (; from < limit; from++)
+            if (buf.get(from) == '\n')
+                return from;
+        return -1;
+    }
+
+    /**
+     * Stop the reader thread.
+     */
+    @Override
+    public void close() {
+        reader.shutdown();
+    }
+}
@@ -0,0 +1,204 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This program benchmarks the lookup latency of NaiveDifferential and BloomDifferential.
+ *
+ * Unlike EmpericalComparison, the keys are sampled once before any measurement (random lines of the key files,
+ * read through a LineIndex), every lookup is timed with System.nanoTime(), a warmup phase runs before the measured
+ * phase, and the p50/p99/p999 latencies and the throughput are reported for both methods.
+ * The hit ratio is the fraction of lookups whose key is in the differential file; the other lookups use keys
+ * that are only in the database. The "-p" rows scan the differential file and the database concurrently
+ * (see PipelinedLookup).
+ *
+ * Usage: java LookupBenchmark [directory] [warmup] [iterations] [hit ratios]
+ * The hit ratios are a comma-separated list, "0,0.5,1" by default.
+ * If the directory does not contain database.txt, a synthetic data set is generated there first.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class LookupBenchmark {
+
+    /**
+     * A lookup method under test.
+     */
+    interface Lookup {
+        String retrieveRecord(String key);
+    }
+
+    private int blackhole;//consumes lookup results so the JIT cannot drop the lookups
+
+    public static void main(String[] args) {
+        String directory = args.length > 0 ? args[0] : ".";
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        double[] hitRatios = args.length > 3 ? parseHitRatios(args[3]) : new double[] {0.0, 0.5, 1.0};
+        double falsePositiveRate = 0.01;
+        int sampleSize = 1000;
+
+        File dir = new File(directory);
+        File database = new File(dir, "database.txt");
+        File diffFile = new File(dir, "differential.txt");
+        File subsetFile = new File(dir, "subset.txt");
+        if (!database.exists()) {
+            System.out.println("No data set in " + dir + ", generating a synthetic one");
+            new SyntheticDataset(42).generate(directory, 1000000, 0.1, 722);
+        }
+
+        LookupBenchmark benchmark = new LookupBenchmark();
+        List<String> hitKeys = benchmark.sampleKeys(diffFile.getPath(), sampleSize, 1);
+        List<String> missKeys = benchmark.sampleKeys(subsetFile.getPath(), sampleSize, 2);
+
+        final String diff = diffFile.getPath();
+        final String db = database.getPath();
+        final BloomDifferential myBloom = new BloomDifferential();
+        myBloom.createFilter(diff, falsePositiveRate);//sized from the number of lines of the differential file
+        final NaiveDifferential myNaive = new NaiveDifferential();
+        final PipelinedLookup pipeline = new PipelinedLookup();//scans both files concurrently
+
+        for (double hitRatio : hitRatios) {
+            List<String> workload = benchmark.buildWorkload(hitKeys, missKeys, hitRatio, warmup + iterations, 3);
+            benchmark.measure("bloom", hitRatio, key -> myBloom.retrieveRecord(key, diff, db), workload, warmup);
+            benchmark.measure("naive", hitRatio, key -> myNaive.retrieveRecord(key, diff, db), workload, warmup);
+            benchmark.measure("bloom-p", hitRatio, key -> myBloom.retrieveRecord(key, diff, db, pipeline), workload, warmup);
+            benchmark.measure("naive-p", hitRatio, key -> myNaive.retrieveRecord(key, diff, db, pipeline), workload, warmup);
+        }
+        pipeline.close();
+    }
+
+    /**
+     * Parse a comma-separated list of hit ratios, "0,0.25,1".
+     * @param list the hit ratios
+     * @return the hit ratios, each in [0, 1]
+     * @throws IllegalArgumentException if a hit ratio is not a number in [0, 1]
+     */
+    static double[] parseHitRatios(String list) {
+        String[] items = list.split(",");
+        double[] hitRatios = new double[items.length];
+        for (int i = 0; i < items.length; i++) {
+            hitRatios[i] = Double.parseDouble(items[i].trim());
+            if (!(hitRatios[i] >= 0 && hitRatios[i] <= 1))
+                throw new IllegalArgumentException("hit ratio " + items[i] + " is not in [0, 1]");
+        }
+        return hitRatios;
+    }
+
+    /**
+     * Pick sampleSize distinct lines uniformly at random from a file of records (or keys) and take their keys.
+     * The lines are read through the LineIndex of the file, so only the sampled lines are read, and the number
+     * of lines is known from the index.
+     * @param fileName the file whose lines start with the 4-word keys
+     * @param sampleSize the number of keys to sample
+     * @param seed the seed of the sampling
+     * @return the sampled keys, at most sampleSize of them
+     */
+    public List<String> sampleKeys(String fileName, int sampleSize, long seed) {
+        ArrayList<String> sample = new ArrayList<String>(sampleSize);
+        Random rand = new Random(seed);
+        try (LineIndex index = LineIndex.open(fileName)) {
+            int numLines = index.numLines();
+            //Floyd's algorithm: sampleSize distinct lines of [0, numLines), each subset equally likely
+            Set<Integer> lines = new LinkedHashSet<Integer>();
+            for (int j = Math.max(0, numLines - sampleSize); j < numLines; j++) {
+                int line = rand.nextInt(j + 1);
+                lines.add(lines.contains(line) ? j : line);
+            }
+            for (int line : lines)
+                sample.add(keyOf(index.line(line)));
+        } catch (IOException e) {
+            System.out.println("Exception in getFileContents(" + fileName + "), msg=" + e);
+        }
+        return sample;
+    }
+
+    /**
+     * Build a shuffled sequence of lookup keys where a fraction hitRatio of the keys come from hitKeys.
+     * @param hitKeys keys that are in the differential file
+     * @param missKeys keys that are in the database but not in the differential file
+     * @param hitRatio the fraction of keys taken from hitKeys, in [0, 1]
+     * @param count the number of keys in the sequence
+     * @param seed the seed of the selection
+     * @return the sequence of keys
+     */
+    public List<String> buildWorkload(List<String> hitKeys, List<String> missKeys, double hitRatio, int count, long seed) {
+        Random rand = new Random(seed);
+        int numHits = (int) Math.round(hitRatio * count);
+        ArrayList<String> workload = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            List<String> from = i < numHits ? hitKeys : missKeys;
+            workload.add(from.get(rand.nextInt(from.size())));
+        }
+        Collections.shuffle(workload, rand);
+        return workload;
+    }
+
+    /**
+     * Run the first warmup keys of the workload without measuring, then time each of the remaining lookups and
+     * print the latency percentiles and the throughput.
+     * @param name the name of the lookup method
+     * @param hitRatio the hit ratio of the workload, only printed
+     * @param lookup the lookup method
+     * @param workload the keys to look up
+     * @param warmup the number of leading keys used for warmup
+     */
+    public void measure(String name, double hitRatio, Lookup lookup, List<String> workload, int warmup) {
+        for (int i = 0; i < warmup; i++) {
+            blackhole += lookup.retrieveRecord(workload.get(i)).length();
+        }
+        int iterations = workload.size() - warmup;
+        long[] latencies = new long[iterations];
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            String key = workload.get(warmup + i);
+            long start = System.nanoTime();
+            String record = lookup.retrieveRecord(key);
+            latencies[i] = System.nanoTime() - start;
+            blackhole += record.length();
+        }
+        long total = System.nanoTime() - begin;
+        Arrays.sort(latencies);
+        System.out.printf("%-7s hitRatio=%.2f n=%d p50=%.3f ms p99=%.3f ms p999=%.3f ms throughput=%.2f ops/s%n",
+                name, hitRatio, iterations,
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6, percentile(latencies, 0.999) / 1e6,
+                iterations / (total / 1e9));
+    }
+
+    /**
+     * Get a percentile of sorted values (nearest rank).
+     * @param sorted values sorted in increasing order
+     * @param q the quantile, in (0, 1]
+     * @return the value at quantile q
+     */
+    static long percentile(long[] sorted, double q) {
+        if (sorted.length == 0)
+            return 0;
+        int rank = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    /**
+     * Get the key "word1 word2 word3 word4" of a record line.
+     * @param line a line of a record or key file
+     * @return the key of the line
+     */
+    private static String keyOf(String line) {
+        String[] arrOfStr = line.split(" ", 5);
+        int words = Math.min(4, arrOfStr.length);
+        StringBuilder key = new StringBuilder(line.length());
+        for (int i = 0; i < words; i++) {
+            if (i > 0)
+                key.append(' ');
+            key.append(arrOfStr[i]);
+        }
+        return key.toString();
+    }
+}
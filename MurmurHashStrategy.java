@@ -0,0 +1,94 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * k MurmurHash hash functions (see kMurmur), each with its own random prime seed.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public final class MurmurHashStrategy implements HashStrategy {
+
+    private final kMurmur[] kMurmurs;//the k Murmur functions
+    private final int filterSize;
+
+    /**
+     * Generate k MurmurHash hash functions with range [0, filterSize).
+     * @param filterSize the size of the filter, a prime
+     * @param numHashes the number of hash functions to be generated
+     */
+    public MurmurHashStrategy(int filterSize, int numHashes) {
+        this.filterSize = filterSize;
+        kMurmurs = new kMurmur[numHashes];
+        Random rand = new Random();
+        for (int i = 0; i < numHashes; i++) {
+            int seed = BloomSizing.leastPrime(rand.nextInt(Integer.MAX_VALUE) + 1);//a random positive prime
+            kMurmurs[i] = new kMurmur(seed, filterSize);
+        }
+    }
+
+    private MurmurHashStrategy(kMurmur[] kMurmurs, int filterSize) {
+        this.kMurmurs = kMurmurs;
+        this.filterSize = filterSize;
+    }
+
+    static MurmurHashStrategy read(DataInputStream in, int filterSize, int numHashes) throws IOException {
+        kMurmur[] kMurmurs = new kMurmur[numHashes];
+        for (int i = 0; i < numHashes; i++)
+            kMurmurs[i] = new kMurmur(in.readInt(), in.readInt(), in.readInt(), filterSize);
+        return new MurmurHashStrategy(kMurmurs, filterSize);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(MURMUR);
+        out.writeInt(filterSize);
+        out.writeInt(kMurmurs.length);
+        for (kMurmur f : kMurmurs) {
+            out.writeInt(f.getSeedValue());
+            out.writeInt(f.getA());
+            out.writeInt(f.getB());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MurmurHashStrategy))
+            return false;
+        MurmurHashStrategy other = (MurmurHashStrategy) o;
+        if (other.filterSize != filterSize || other.kMurmurs.length != kMurmurs.length)
+            return false;
+        for (int i = 0; i < kMurmurs.length; i++) {
+            if (other.kMurmurs[i].getSeedValue() != kMurmurs[i].getSeedValue()
+                    || other.kMurmurs[i].getA() != kMurmurs[i].getA() || other.kMurmurs[i].getB() != kMurmurs[i].getB())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 31 * filterSize + kMurmurs.length;
+        for (kMurmur f : kMurmurs)
+            h = 31 * (31 * (31 * h + f.getSeedValue()) + f.getA()) + f.getB();
+        return h;
+    }
+
+    @Override
+    public int numHashes() {
+        return kMurmurs.length;
+    }
+
+    @Override
+    public int filterSize() {
+        return filterSize;
+    }
+
+    @Override
+    public int index(int i, byte[] key, int offset, int length) {
+        return kMurmurs[i].hashV(key, offset, length);
+    }
+}
@@ -7,9 +7,6 @@
  */
 
 import java.awt.RenderingHints.Key;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 
 public class NaiveDifferential {
@@ -24,22 +21,12 @@ public class NaiveDifferential {
 //    }
 
     public String retrieveRecord(String key, String diffFile, String database){
-        String myKey = key.replaceAll("\\s+","");
+        String myKey = KeyCanonicalizer.stripWhitespace(key);
 
-        File file = new File( diffFile); //search the key in diffFile directly
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] arrOfStr = line.split(" ", 5);
-                String temp = "";
-                for(int i = 0; i < arrOfStr.length - 1; i++){
-                    temp = temp + arrOfStr[i];
-                }
-                if(temp.equals(myKey)){
-                    System.out.println("Found in DiffFile.txt");
-                    System.out.println(line);
-                    return line;
-                }
+        try { //search the key in diffFile directly
+            String line = LineScanner.forCurrentThread().find(diffFile, myKey);
+            if(line != null){
+                return line;
             }
             //key is not in diffFile
             return retrieveRecordfromDatabase(myKey, database);
@@ -49,21 +36,41 @@ public class NaiveDifferential {
         return key + " does not exist!";
     }
 
+    /**
+     * Retrieve the newest record associated with the key, scanning diffFile and database concurrently
+     * (see PipelinedLookup) instead of one after the other.
+     * @param key the key "word1 word2 word3 word4"
+     * @param diffFile name of the differential file that stores changed records
+     * @param database name of the database where all records (all old records) are stored
+     * @param pipeline the threads of the concurrent scans
+     * @return the record associated with the key
+     */
+    public String retrieveRecord(String key, String diffFile, String database, PipelinedLookup pipeline){
+        String record = pipeline.retrieveRecord(key, diffFile, database);
+        return record != null ? record : KeyCanonicalizer.stripWhitespace(key) + "does not exist!";
+    }
+
+    /**
+     * Retrieve the newest record associated with the key from block-compressed files, without a filter.
+     * @param key the key "word1 word2 word3 word4"
+     * @param diffStore the block file of the differential file
+     * @param database the block file of the database
+     * @return the record associated with the key
+     */
+    public String retrieveRecord(String key, BlockStore diffStore, BlockStore database){
+        String myKey = KeyCanonicalizer.stripWhitespace(key);
+        String record = diffStore.find(myKey);
+        if(record == null){
+            record = database.find(myKey);
+        }
+        return record != null ? record : myKey + "does not exist!";
+    }
+
     private String retrieveRecordfromDatabase(String myKey, String database){
-        File file = new File(database);
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] arrOfStr = line.split(" ", 5);
-                String temp = "";
-                for(int i = 0; i < arrOfStr.length - 1; i++){
-                    temp = temp + arrOfStr[i];
-                }
-                if(temp.equals(myKey)){
-//                    System.out.println("Found in Database.txt");
-//                    System.out.println(line);
-                    return line;
-                }
+        try {
+            String line = LineScanner.forCurrentThread().find(database, myKey);
+            if(line != null){
+                return line;
             }
         }catch(IOException e){
             System.out.println("Exception in getFileContents(" +database + "), msg=" + e);
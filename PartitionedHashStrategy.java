@@ -0,0 +1,87 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * k hash functions over a filter split into k equal segments, where the ith hash function only addresses the
+ * ith segment: index(i, key) = i * segmentSize + h_i(key), with h_i the ith function of a strategy whose range is
+ * one segment. So the k bits of a key never collide with each other, the k probes of a key are to k different
+ * regions that can be tested in any order, and the fill of every segment can be watched separately
+ * (see HashedBloomFilter.segmentFill). For the same total size the false positive rate is about the same as
+ * with k functions over the whole filter.
+ */
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public final class PartitionedHashStrategy implements HashStrategy {
+
+    private final HashStrategy segmentStrategy;//the k functions, each with range [0, segmentSize)
+    private final int segmentSize;
+    private final int filterSize;
+
+    /**
+     * Partition a filter into one segment per hash function of segmentStrategy.
+     * @param segmentStrategy k hash functions whose range is one segment
+     * @throws IllegalArgumentException if the k segments do not fit in an int
+     */
+    public PartitionedHashStrategy(HashStrategy segmentStrategy) {
+        this.segmentStrategy = segmentStrategy;
+        segmentSize = segmentStrategy.filterSize();
+        long size = (long) segmentSize * segmentStrategy.numHashes();
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(segmentStrategy.numHashes() + " segments of " + segmentSize + " bits are too large");
+        filterSize = (int) size;
+    }
+
+    /**
+     * Get the size of a segment for a filter of about filterSize bits and numHashes hash functions: the least
+     * prime that is at least filterSize / numHashes, so that the (a * x + b) % p functions stay universal.
+     * @param filterSize the total size of the filter
+     * @param numHashes the number of hash functions, hence of segments
+     * @return the segment size
+     */
+    public static int segmentSize(int filterSize, int numHashes) {
+        return BloomSizing.leastPrime((filterSize + numHashes - 1) / numHashes);
+    }
+
+    /**
+     * Get the size of one segment.
+     * @return the number of bits addressed by each hash function
+     */
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    @Override
+    public int numHashes() {
+        return segmentStrategy.numHashes();
+    }
+
+    @Override
+    public int filterSize() {
+        return filterSize;
+    }
+
+    @Override
+    public int index(int i, byte[] key, int offset, int length) {
+        return i * segmentSize + segmentStrategy.index(i, key, offset, length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PartitionedHashStrategy && ((PartitionedHashStrategy) o).segmentStrategy.equals(segmentStrategy);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * segmentStrategy.hashCode() + PARTITIONED;
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(PARTITIONED);
+        out.writeInt(filterSize);
+        out.writeInt(numHashes());
+        segmentStrategy.writeTo(out);
+    }
+}
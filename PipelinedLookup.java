@@ -0,0 +1,176 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class retrieves records by scanning the differential file and the database at the same time instead of
+ * one after the other. The database is scanned on a thread of a pool while the calling thread scans the
+ * differential file:
+ *  - if the differential file has the key, its record is returned at once and the database scan is cancelled;
+ *  - otherwise the database record is returned, which by then may already have been found.
+ * So a lookup whose key is not in the differential file (or a Bloom false positive) takes about
+ * max(diff scan, db scan) instead of diff scan + db scan. Each scan reads ahead on its own thread (see
+ * LineScanner).
+ * The scans are CPU-bound once the files are cached, so with a single processor the two scans only slow each
+ * other down, and the files are scanned one after the other instead. On a single rotating disk the two streams
+ * compete for the head, so this helps most on SSDs or when the files are cached or on different disks.
+ * The database scans use scanners of this object, taken for a scan and given back after it, so there are as
+ * many as the most concurrent lookups and close releases them; the threads of the pool hold no scanner.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PipelinedLookup implements AutoCloseable {
+
+    private final ExecutorService pool;
+    private final boolean concurrent;//false if there is no processor for the second scan
+    private final ConcurrentLinkedDeque<LineScanner> scanners = new ConcurrentLinkedDeque<LineScanner>();//idle scanners of the database scans
+    private volatile boolean closed;
+
+    /**
+     * Create the threads of the database scans. A lookup uses the calling thread and one pool thread, so
+     * concurrent lookups each get their own database scan.
+     */
+    public PipelinedLookup() {
+        this(Runtime.getRuntime().availableProcessors() > 1);
+    }
+
+    /**
+     * Create the threads of the database scans.
+     * @param concurrent true to scan both files concurrently, false to scan them one after the other
+     */
+    public PipelinedLookup(boolean concurrent) {
+        this.concurrent = concurrent;
+        pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "database scan");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Retrieve the newest record associated with the key, scanning both files concurrently.
+     * @param key the key "word1 word2 word3 word4"
+     * @param diffFile name of the differential file that stores changed records
+     * @param database name of the database where all records (all old records) are stored
+     * @return the record of the differential file if it has the key, else the record of the database, else null
+     */
+    public String retrieveRecord(String key, String diffFile, String database) {
+        return retrieveRecord(key, null, diffFile, database);
+    }
+
+    /**
+     * Retrieve the newest record associated with the key, using a filter of the keys of the differential file:
+     * if the key does not appear in it, only the database is scanned; otherwise both files are scanned
+     * concurrently, so a false positive costs little more than a plain database scan.
+     * The key is canonicalized once by the canonicalizer of the filter, and the same bytes are probed in the
+     * filter and compared with the keys of both files; without a filter the keys match exactly.
+     * @param myKey the key "word1 word2 word3 word4"
+     * @param diffFilter the filter of the keys of diffFile, or null to always scan diffFile
+     * @param diffFile name of the differential file that stores changed records
+     * @param database name of the database where all records (all old records) are stored
+     * @return the record of the differential file if it has the key, else the record of the database, else null
+     */
+    public String retrieveRecord(String myKey, BloomFilter diffFilter, String diffFile, String database) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        KeyCanonicalizer canonicalizer = diffFilter != null ? diffFilter.canonicalizer() : KeyCanonicalizer.CASE_SENSITIVE;
+        byte[] key = canonicalizer.canonicalize(myKey);
+        if (diffFilter != null && !diffFilter.appearsCanonical(key))
+            return scan(LineScanner.forCurrentThread(), database, key, canonicalizer, cancelled);//key is not in diffFile
+        if (!concurrent) {
+            String record = scan(LineScanner.forCurrentThread(), diffFile, key, canonicalizer, cancelled);
+            return record != null ? record : scan(LineScanner.forCurrentThread(), database, key, canonicalizer, cancelled);
+        }
+
+        Future<String> fromDatabase = pool.submit(() -> {
+            LineScanner scanner = borrowScanner();
+            try {
+                return scan(scanner, database, key, canonicalizer, cancelled);
+            } finally {
+                returnScanner(scanner);
+            }
+        });
+        String record = scan(LineScanner.forCurrentThread(), diffFile, key, canonicalizer, cancelled);
+        if (record != null) {
+            cancelled.set(true);//the database record is older, stop reading it
+            return record;
+        }
+        try {
+            return fromDatabase.get();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Exception in getFileContents(" + database + "), msg=" + e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Take an idle scanner, or create one if all are scanning.
+     * @return a scanner used only by the caller until it is given back by returnScanner
+     */
+    private LineScanner borrowScanner() {
+        LineScanner scanner = scanners.poll();
+        return scanner != null ? scanner : new LineScanner(LineScanner.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Give back a scanner taken by borrowScanner; after close it is closed instead.
+     * @param scanner the scanner
+     */
+    private void returnScanner(LineScanner scanner) {
+        scanners.push(scanner);
+        if (closed)
+            closeScanners();//close may have run before the push
+    }
+
+    private void closeScanners() {
+        LineScanner scanner;
+        while ((scanner = scanners.poll()) != null)
+            scanner.close();
+    }
+
+    /**
+     * Find the first line of a file with the key.
+     * @param scanner the scanner of the calling thread
+     * @param fileName the file to scan
+     * @param key canonical bytes of the key
+     * @param canonicalizer the canonicalizer of key
+     * @param cancelled stops the scan when set
+     * @return the line, or null if it is not found or the scan was cancelled
+     */
+    private static String scan(LineScanner scanner, String fileName, byte[] key, KeyCanonicalizer canonicalizer, AtomicBoolean cancelled) {
+        String[] found = new String[1];
+        try {
+            scanner.scan(fileName, (buf, start, end) -> {
+                if (cancelled.get())
+                    return false;
+                if (!canonicalizer.keyEquals(buf, start, end, key))
+                    return true;
+                found[0] = LineScanner.decode(buf, start, end);
+                return false;
+            });
+            return found[0];
+        } catch (IOException e) {
+            System.out.println("Exception in getFileContents(" + fileName + "), msg=" + e);
+        }
+        return null;
+    }
+
+    /**
+     * Stop the threads and close the scanners; running database scans finish or are cancelled by their lookups,
+     * and close their scanners when they end.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        pool.shutdown();
+        closeScanners();
+    }
+}
@@ -0,0 +1,326 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This program runs checks of bugs that were fixed, on small files written to a temporary directory, and exits
+ * with status 1 if one of them fails.
+ *
+ * Usage: java -Dfile.encoding=US-ASCII RegressionChecks
+ * (the default charset must not be UTF-8 for tailerNonAsciiKey to catch a tailer that decodes lines with it)
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+public class RegressionChecks {
+
+    private final Path dir;
+    private final List<String> failures = new ArrayList<String>();
+
+    public static void main(String[] args) throws IOException {
+        RegressionChecks checks = new RegressionChecks(Files.createTempDirectory("bloom-checks"));
+        checks.tailerNonAsciiKey();
+        checks.truncatedBlock();
+        checks.shardedFoldedKey();
+        checks.pipelinedScannersClosed();
+        checks.staticIndexDuplicateKeys();
+        checks.mergeShardFilters();
+        checks.blockStoreNonAscii();
+        checks.tailerFoldedKeys();
+        checks.filterClientLocalCopy();
+        for (String failure : checks.failures)
+            System.out.println("FAILED " + failure);
+        System.out.println(checks.failures.isEmpty() ? "All checks passed" : checks.failures.size() + " checks failed");
+        if (!checks.failures.isEmpty())
+            System.exit(1);
+    }
+
+    /**
+     * @param dir the directory of the files of the checks
+     */
+    public RegressionChecks(Path dir) {
+        this.dir = dir;
+    }
+
+    private String write(String name, String... lines) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, String.join("\n", lines).concat("\n").getBytes(StandardCharsets.UTF_8));
+        file.toFile().deleteOnExit();
+        return file.toString();
+    }
+
+    private synchronized void check(String name, boolean passed, String detail) {
+        if (!passed)
+            failures.add(name + ": " + detail);
+    }
+
+    /**
+     * A record with a non-ASCII key appended to the differential file is found by the filter of the tailer,
+     * as by a filter created from the file, and not read from the database.
+     */
+    public void tailerNonAsciiKey() throws IOException {
+        String database = write("tailer-database.txt", "café noir grand cru 1980 5 6", "plain old key here 1970 1 1");
+        String diffFile = write("tailer-differential.txt", "café noir grand cru 1990 7 8");
+        String checkpoint = dir.resolve("tailer-checkpoint.bin").toString();
+        new File(checkpoint).deleteOnExit();
+        String expected = "café noir grand cru 1990 7 8";
+        try (DifferentialTailer tailer = new DifferentialTailer(diffFile, checkpoint, 1000, 0.01)) {
+            String record = tailer.differential().retrieveRecord("café noir grand cru", diffFile, database);
+            check("tailerNonAsciiKey", expected.equals(record), "the tailer found " + record);
+        }
+        BloomDifferential created = new BloomDifferential();
+        created.createFilter(diffFile, 0.01);
+        String record = created.retrieveRecord("café noir grand cru", diffFile, database);
+        check("tailerNonAsciiKey", expected.equals(record), "createFilter found " + record);
+    }
+
+    /**
+     * A truncated or corrupt compressed block is reported instead of hanging the thread that decompresses it.
+     */
+    public void truncatedBlock() {
+        byte[] raw = new byte[1 << 14];
+        for (int i = 0; i < raw.length; i++)
+            raw[i] = (byte) (i * 31 % 251);
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[raw.length * 2];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+        for (int cut : new int[] {0, 1, length / 2, length - 1}) {
+            Thread decoder = new Thread(() -> {
+                try {
+                    BlockStore.inflate(compressed, cut, new byte[raw.length]);
+                    check("truncatedBlock", false, "a block cut to " + cut + " of " + length + " bytes was decompressed");
+                } catch (DataFormatException e) {
+                    //expected
+                }
+            });
+            decoder.setDaemon(true);
+            decoder.start();
+            try {
+                decoder.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            check("truncatedBlock", !decoder.isAlive(), "decompressing a block cut to " + cut + " of " + length + " bytes hangs");
+        }
+    }
+
+    /**
+     * With LOWER_CASE keys, a key is found in a sharded store whatever its case in the lookup and in the files,
+     * because the shard is chosen from the folded key.
+     */
+    public void shardedFoldedKey() throws IOException {
+        List<String> diffLines = new ArrayList<String>();
+        List<String> databaseLines = new ArrayList<String>();
+        for (int i = 0; i < 64; i++) {
+            databaseLines.add("Key" + i + " Word Word Word 1970 1 1");
+            if (i % 2 == 0)
+                diffLines.add("KEY" + i + " WORD word Word 1990 2 2");
+        }
+        String diffFile = write("shard-differential.txt", diffLines.toArray(new String[0]));
+        String database = write("shard-database.txt", databaseLines.toArray(new String[0]));
+        Path shards = Files.createTempDirectory(dir, "shards");
+        ShardedDifferential.reshard(diffFile, database, shards.toString(), 8, KeyCanonicalizer.LOWER_CASE);
+        for (File file : shards.toFile().listFiles())
+            file.deleteOnExit();
+        shards.toFile().deleteOnExit();
+        ShardedDifferential store = new ShardedDifferential(shards.toString(), 8, 0.01, KeyCanonicalizer.LOWER_CASE);
+        try {
+            for (int i = 0; i < 64; i++) {
+                String record = store.retrieveRecord("key" + i + " word word word");
+                String expected = i % 2 == 0 ? diffLines.get(i / 2) : databaseLines.get(i);
+                check("shardedFoldedKey", expected.equals(record), "key" + i + " found " + record);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Closing a PipelinedLookup stops the read-ahead threads of the scanners of its database scans.
+     */
+    public void pipelinedScannersClosed() throws IOException {
+        String database = write("pipelined-database.txt", "a b c d 1970 1 1", "e f g h 1970 1 1");
+        String diffFile = write("pipelined-differential.txt", "a b c d 1990 2 2");
+        LineScanner.forCurrentThread().find(diffFile, "abcd");//the scanner of this thread is not counted
+        int before = readAheadThreads();
+        PipelinedLookup lookup = new PipelinedLookup(true);
+        for (int i = 0; i < 20; i++)
+            lookup.retrieveRecord(i % 2 == 0 ? "a b c d" : "e f g h", diffFile, database);
+        lookup.close();
+        int after = readAheadThreads();
+        for (int wait = 0; wait < 20 && after > before; wait++) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            after = readAheadThreads();
+        }
+        check("pipelinedScannersClosed", after <= before, (after - before) + " read-ahead threads left after close");
+    }
+
+    private static int readAheadThreads() {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet())
+            if (t.getName().equals("read-ahead") && t.isAlive())
+                count++;
+        return count;
+    }
+
+    /**
+     * Duplicate keys of the database, also keys that differ only in case with LOWER_CASE, are found in their
+     * first line by one read, not by a scan.
+     */
+    public void staticIndexDuplicateKeys() throws IOException {
+        String database = write("static-database.txt", "a b c d 1970 1 1", "p q r s 1975 1 1", "a b c d 1980 2 2",
+                "A B C D 1985 3 3", "w x y z 1990 4 4", "a b c d 1995 5 5");
+        new File(database + ".idx").deleteOnExit();
+        for (KeyCanonicalizer canonicalizer : new KeyCanonicalizer[] {KeyCanonicalizer.CASE_SENSITIVE, KeyCanonicalizer.LOWER_CASE}) {
+            try (StaticDatabaseIndex index = StaticDatabaseIndex.build(database, canonicalizer, 2)) {
+                String record = index.find("a b c d");
+                check("staticIndexDuplicateKeys", "a b c d 1970 1 1".equals(record), canonicalizer.mode() + " found " + record);
+                check("staticIndexDuplicateKeys", index.numAmbiguous() == 0,
+                        canonicalizer.mode() + " has " + index.numAmbiguous() + " ambiguous hashes");
+            }
+        }
+    }
+
+    /**
+     * The filters of the shards of a ShardedDifferential, and a filter read back from its saved bytes, can be
+     * merged with union into a filter of all the keys of the differential file.
+     */
+    public void mergeShardFilters() throws IOException {
+        List<String> diffLines = new ArrayList<String>();
+        for (int i = 0; i < 200; i++)
+            diffLines.add("merge key " + i + " here 1990 1 1");
+        String diffFile = write("merge-differential.txt", diffLines.toArray(new String[0]));
+        String database = write("merge-database.txt", "only in database 1970 1 1");
+        Path shards = Files.createTempDirectory(dir, "merge");
+        ShardedDifferential.reshard(diffFile, database, shards.toString(), 4);
+        for (File file : shards.toFile().listFiles())
+            file.deleteOnExit();
+        shards.toFile().deleteOnExit();
+        ShardedDifferential store = new ShardedDifferential(shards.toString(), 4, 0.01);
+        try {
+            HashedBloomFilter merged = store.mergedFilter();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ((HashedBloomFilter) store.getFilter(0)).writeTo(new DataOutputStream(bytes));
+            HashedBloomFilter readBack = HashedBloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            HashedBloomFilter fromDisk = new HashedBloomFilter(readBack.strategy(), readBack.canonicalizer());
+            fromDisk.union(readBack);
+            for (int shard = 1; shard < 4; shard++)
+                fromDisk.union((HashedBloomFilter) store.getFilter(shard));
+            int missing = 0;
+            for (int i = 0; i < 200; i++) {
+                byte[] key = KeyCanonicalizer.CASE_SENSITIVE.canonicalize("merge key " + i + " here");
+                if (!merged.appearsCanonical(key) || !fromDisk.appearsCanonical(key))
+                    missing++;
+            }
+            check("mergeShardFilters", missing == 0, missing + " keys of the differential file are not in the merged filters");
+        } catch (IllegalArgumentException e) {
+            check("mergeShardFilters", false, "the filters cannot be merged: " + e.getMessage());
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Records with non-ASCII keys and text are stored exactly in a block file and found by their keys, whatever
+     * the default charset.
+     */
+    public void blockStoreNonAscii() throws IOException {
+        String[] records = {"café noir grand cru 1980 5 6", "naïve Straße über alles 1990 7 8 2000 9 10",
+                "plain old key here 1970 1 1", "日本語 の キー です 2001 2 3"};
+        String textFile = write("blocks.txt", records);
+        String blockFile = dir.resolve("blocks.blk").toString();
+        new File(blockFile).deleteOnExit();
+        BlockStore.write(textFile, blockFile);
+        try (BlockStore store = new BlockStore(blockFile, 4)) {
+            for (String record : records) {
+                String found = store.find(BloomDifferential.keyOf(record));
+                check("blockStoreNonAscii", record.equals(found), "the key of \"" + record + "\" found " + found);
+            }
+        }
+    }
+
+    /**
+     * A tailer with LOWER_CASE keys finds a record whatever the case of the key, while lookups run during the
+     * catch up of appended records, and restores its filter from the checkpoint only for the same canonicalizer.
+     */
+    public void tailerFoldedKeys() throws IOException {
+        String database = write("folded-database.txt", "Mixed Case Key Here 1970 1 1");
+        String diffFile = write("folded-differential.txt", "other key in diff 1990 1 1");
+        String checkpoint = dir.resolve("folded-checkpoint.bin").toString();
+        new File(checkpoint).deleteOnExit();
+        try (DifferentialTailer tailer = new DifferentialTailer(diffFile, checkpoint, 100000, 0.01, KeyCanonicalizer.LOWER_CASE)) {
+            BloomDifferential differential = tailer.differential();
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread reader = new Thread(() -> {
+                while (!stop.get()) {
+                    String record = differential.retrieveRecord("OTHER KEY IN DIFF", diffFile, database);
+                    if (record == null)
+                        check("tailerFoldedKeys", false, "a lookup during the catch up found nothing");
+                }
+            });
+            reader.start();
+            StringBuilder appended = new StringBuilder();
+            for (int i = 0; i < 20000; i++)
+                appended.append("Appended Key ").append(i).append(" X 2000 1 1\n");
+            Files.write(Paths.get(diffFile), appended.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            tailer.catchUp();
+            stop.set(true);
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String record = differential.retrieveRecord("appended key 19999 x", diffFile, database);
+            check("tailerFoldedKeys", "Appended Key 19999 X 2000 1 1".equals(record), "the tailer found " + record);
+        }
+        try (DifferentialTailer restored = new DifferentialTailer(diffFile, checkpoint, 100000, 0.01, KeyCanonicalizer.LOWER_CASE)) {
+            check("tailerFoldedKeys", restored.differential().getFilter().dataSize() == 20001,
+                    "the restored filter has " + restored.differential().getFilter().dataSize() + " keys");
+        }
+        try (DifferentialTailer exact = new DifferentialTailer(diffFile, checkpoint, 100000, 0.01)) {
+            check("tailerFoldedKeys", exact.differential().getFilter().canonicalizer() == KeyCanonicalizer.CASE_SENSITIVE,
+                    "a CASE_SENSITIVE tailer used the LOWER_CASE checkpoint");
+        }
+    }
+
+    /**
+     * The copy of the filter fetched from a FilterServer answers as the server, for keys of the differential file,
+     * which must all appear, and for other keys.
+     */
+    public void filterClientLocalCopy() throws IOException {
+        String diffFile = write("served-differential.txt", "Archbishop had given him 1720 8 6", "café noir grand cru 1990 7 8");
+        HashedBloomFilter filter = (HashedBloomFilter) new BloomDifferential().createFilter(diffFile, 0.01);
+        try (FilterServer server = new FilterServer(filter, 0); FilterClient client = new FilterClient(server.port())) {
+            HashedBloomFilter local = client.fetchFilter();
+            for (String key : new String[] {"Archbishop had given him", "café noir grand cru", "not in the file", "archbishop had given him"}) {
+                boolean remote = client.appears(key);
+                boolean copy = client.appearsIn(local, key);
+                check("filterClientLocalCopy", remote == copy, key + ": server " + remote + ", local " + copy);
+            }
+            check("filterClientLocalCopy", client.appearsIn(local, "Archbishop had given him") && client.appearsIn(local, "café noir grand cru"),
+                    "a key of the differential file is not in the local copy");
+        }
+    }
+}
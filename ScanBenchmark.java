@@ -0,0 +1,91 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This program measures the throughput of a full scan of a file, in GB/s, by
+ *  - BufferedReader(FileReader): readLine only, and readLine with the split/concat key loop that the lookups
+ *    used before LineScanner,
+ *  - LineScanner: counting the lines, and comparing the key of every line with a key that is not in the file,
+ *    which is what a lookup of a missing key does.
+ * Every scan runs several rounds and the best round is reported; the first rounds also bring the file into the
+ * page cache, so the numbers are the CPU cost of a scan, not the disk speed.
+ *
+ * Usage: java ScanBenchmark [file] [rounds]
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+public class ScanBenchmark {
+
+    interface Scan {
+        long run(String fileName) throws IOException;//returns a value that depends on the whole scan
+    }
+
+    private static long blackhole;
+
+    public static void main(String[] args) throws IOException {
+        String fileName = args.length > 0 ? args[0] : "database.txt";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        if (!new File(fileName).exists()) {
+            System.out.println("No " + fileName + ", generating a synthetic data set in scan-data");
+            new SyntheticDataset(42).generate("scan-data", 1000000, 0.1, 722);
+            fileName = new File("scan-data", "database.txt").getPath();
+        }
+        long size = new File(fileName).length();
+        String missing = "no such key here";
+
+        String[] names = {"BufferedReader readLine", "BufferedReader split key", "LineScanner lines", "LineScanner key"};
+        Scan[] scans = {
+            f -> {
+                long lines = 0;
+                try (BufferedReader br = new BufferedReader(new FileReader(new File(f)))) {
+                    while (br.readLine() != null)
+                        lines++;
+                }
+                return lines;
+            },
+            f -> {
+                long matches = 0;
+                try (BufferedReader br = new BufferedReader(new FileReader(new File(f)))) {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        String[] arrOfStr = line.split(" ", 5);
+                        String temp = "";
+                        for (int i = 0; i < arrOfStr.length - 1; i++) {
+                            temp = temp + arrOfStr[i];
+                        }
+                        if (temp.equals(missing))
+                            matches++;
+                    }
+                }
+                return matches;
+            },
+            f -> {
+                long[] lines = {0};
+                LineScanner.forCurrentThread().scan(f, (buf, start, end) -> {
+                    lines[0]++;
+                    return true;
+                });
+                return lines[0];
+            },
+            f -> LineScanner.forCurrentThread().find(f, missing) == null ? 0 : 1,
+        };
+
+        System.out.printf("%s: %d bytes, best of %d rounds%n", fileName, size, rounds);
+        System.out.printf("%-26s %8s %10s%n", "scan", "GB/s", "ms");
+        for (int s = 0; s < scans.length; s++) {
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                blackhole += scans[s].run(fileName);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-26s %8.3f %10.1f%n", names[s], (double) size / best, best / 1e6);
+        }
+        if (blackhole < 0)
+            System.out.println(blackhole);
+    }
+}
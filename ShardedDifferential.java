@@ -0,0 +1,256 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class implements a differential file management system whose records are partitioned into N shards
+ * by a hash of their key. Shard i consists of the files differential-i.txt and database-i.txt in one directory
+ * and has its own bloom filter over the keys of differential-i.txt.
+ * A lookup only reads the files of the shard of its key, so a miss scans 1/N of the data set, and a batch of
+ * lookups runs the shards in parallel, one thread per core.
+ * A key is routed by the hash of its canonical bytes (see KeyCanonicalizer), so keys that the filters match
+ * as equal, e.g. "Foo bar" and "foo bar" with LOWER_CASE, are in the same shard. The files must be split by
+ * reshard with the canonicalizer the store is opened with.
+ * The shard filters share one strategy, sized for all the keys of the differential files, so they can be merged
+ * with union into the filter of the whole differential file without reading it (see mergedFilter). Each shard
+ * filter then holds 1/N of the keys and has a lower false positive rate than the target.
+ *
+ * Usage: java ShardedDifferential reshard differential.txt database.txt directory numShards
+ *        java ShardedDifferential lookup directory numShards key...
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ShardedDifferential {
+
+    private static final long SHARD_SEED = 0x5bd1e995L;//seed of the hash that assigns keys to shards
+
+    private final String directory;
+    private final int numShards;
+    private final KeyCanonicalizer canonicalizer;
+    private final BloomDifferential[] shards;
+    private final ExecutorService pool;
+
+    public static void main(String[] args) {
+        if (args.length == 5 && args[0].equals("reshard")) {
+            reshard(args[1], args[2], args[3], Integer.parseInt(args[4]));
+        } else if (args.length >= 3 && args[0].equals("lookup")) {
+            ShardedDifferential sharded = new ShardedDifferential(args[1], Integer.parseInt(args[2]), 0.01);
+            List<String> keys = new ArrayList<String>();
+            for (int i = 3; i < args.length; i++)
+                keys.add(args[i]);
+            for (String record : sharded.retrieveRecords(keys))
+                System.out.println(record);
+            sharded.close();
+        } else {
+            System.out.println("Usage: java ShardedDifferential reshard differential.txt database.txt directory numShards");
+            System.out.println("       java ShardedDifferential lookup directory numShards key...");
+        }
+    }
+
+    /**
+     * Open the shards in a directory written by reshard and create the bloom filter of every shard.
+     * @param directory the directory of the shards
+     * @param numShards the number of shards, as given to reshard
+     * @param falsePositiveRate the target false positive rate of the filter of every shard
+     */
+    public ShardedDifferential(String directory, int numShards, double falsePositiveRate) {
+        this(directory, numShards, falsePositiveRate, KeyCanonicalizer.CASE_SENSITIVE);
+    }
+
+    /**
+     * Open the shards in a directory written by reshard with canonicalizer, and create the bloom filter of
+     * every shard.
+     * @param directory the directory of the shards
+     * @param numShards the number of shards, as given to reshard
+     * @param falsePositiveRate the target false positive rate of the filter of every shard
+     * @param canonicalizer the canonicalizer of the keys, as given to reshard
+     */
+    public ShardedDifferential(String directory, int numShards, double falsePositiveRate, KeyCanonicalizer canonicalizer) {
+        this.directory = directory;
+        this.numShards = numShards;
+        this.canonicalizer = canonicalizer;
+        shards = new BloomDifferential[numShards];
+        pool = Executors.newFixedThreadPool(Math.min(numShards, Runtime.getRuntime().availableProcessors()));
+        long numItems = 0;
+        for (int i = 0; i < numShards; i++)
+            numItems += BloomDifferential.countLines(diffFile(i));
+        BloomSizing.Parameters params = BloomSizing.forFalsePositiveRate(Math.max(1, numItems), falsePositiveRate);
+        HashStrategy strategy = new FNVHashStrategy(BloomSizing.leastPrime((int) params.numBits), params.numHashes);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < numShards; i++) {//the shard filters are independent, so they are built in parallel
+            final int shard = i;
+            shards[shard] = new BloomDifferential(canonicalizer);
+            futures.add(pool.submit(() -> shards[shard].createFilter(diffFile(shard), new HashedBloomFilter(strategy, canonicalizer))));
+        }
+        await(futures);
+    }
+
+    /**
+     * Retrieve the newest record associated with the key, reading only the files of its shard.
+     * @param key the key "word1 word2 word3 word4"
+     * @return the record associated with the key, as BloomDifferential.retrieveRecord
+     */
+    public String retrieveRecord(String key) {
+        int shard = shardOf(canonicalizer.canonicalize(key), numShards);
+        return shards[shard].retrieveRecord(key, diffFile(shard), databaseFile(shard));
+    }
+
+    /**
+     * Retrieve the records of many keys. The keys are grouped by shard and the shards are searched in parallel.
+     * @param keys the keys
+     * @return the records, in the order of keys
+     */
+    public List<String> retrieveRecords(List<String> keys) {
+        List<List<Integer>> byShard = new ArrayList<List<Integer>>();
+        for (int i = 0; i < numShards; i++)
+            byShard.add(new ArrayList<Integer>());
+        for (int i = 0; i < keys.size(); i++)
+            byShard.get(shardOf(canonicalizer.canonicalize(keys.get(i)), numShards)).add(i);
+
+        final String[] records = new String[keys.size()];
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < numShards; i++) {
+            final int shard = i;
+            final List<Integer> positions = byShard.get(shard);
+            if (positions.isEmpty())
+                continue;
+            futures.add(pool.submit(() -> {
+                for (int position : positions)
+                    records[position] = shards[shard].retrieveRecord(keys.get(position), diffFile(shard), databaseFile(shard));
+            }));
+        }
+        await(futures);
+        List<String> result = new ArrayList<String>(records.length);
+        for (String record : records)
+            result.add(record);
+        return result;
+    }
+
+    /**
+     * Get the bloom filter of a shard.
+     * @param shard the shard, 0 <= shard < numShards
+     * @return the filter over the keys of differential-shard.txt
+     */
+    public BloomFilter getFilter(int shard) {
+        return shards[shard].getFilter();
+    }
+
+    /**
+     * Merge the shard filters into a filter of the keys of all the differential files, without reading them.
+     * @return a new filter, the union of the shard filters
+     */
+    public HashedBloomFilter mergedFilter() {
+        HashedBloomFilter first = (HashedBloomFilter) shards[0].getFilter();
+        HashedBloomFilter merged = new HashedBloomFilter(first.strategy(), canonicalizer);
+        for (BloomDifferential shard : shards)
+            merged.union((HashedBloomFilter) shard.getFilter());
+        return merged;
+    }
+
+    /**
+     * Stop the threads of this store.
+     */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Split a differential file and a database into numShards shards for a store with exact keys.
+     * @param diffFile the name of the differential file
+     * @param database the name of the database file
+     * @param directory the directory where differential-i.txt and database-i.txt are written
+     * @param numShards the number of shards
+     */
+    public static void reshard(String diffFile, String database, String directory, int numShards) {
+        reshard(diffFile, database, directory, numShards, KeyCanonicalizer.CASE_SENSITIVE);
+    }
+
+    /**
+     * Split a differential file and a database into numShards shards, reading each input file once.
+     * @param diffFile the name of the differential file
+     * @param database the name of the database file
+     * @param directory the directory where differential-i.txt and database-i.txt are written
+     * @param numShards the number of shards
+     * @param canonicalizer the canonicalizer of the store that will open the shards
+     */
+    public static void reshard(String diffFile, String database, String directory, int numShards, KeyCanonicalizer canonicalizer) {
+        new File(directory).mkdirs();
+        split(diffFile, directory, "differential", numShards, canonicalizer);
+        split(database, directory, "database", numShards, canonicalizer);
+    }
+
+    /**
+     * Write every line of a file to the shard of its key. The lines are copied as bytes.
+     */
+    private static void split(String fileName, String directory, String prefix, int numShards, KeyCanonicalizer canonicalizer) {
+        OutputStream[] writers = new OutputStream[numShards];
+        try {
+            for (int i = 0; i < numShards; i++)
+                writers[i] = new BufferedOutputStream(new FileOutputStream(shardFile(directory, prefix, i)), 1 << 16);
+            LineScanner.forCurrentThread().scan(fileName, (buf, start, end) -> {
+                OutputStream writer = writers[shardOf(canonicalizer.lineKey(buf, start, end), numShards)];
+                try {
+                    for (int i = start; i < end; i++)
+                        writer.write(buf.get(i));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Exception in getFileContents(" + fileName + "), msg=" + e);
+        } finally {
+            for (OutputStream writer : writers) {
+                try {
+                    if (writer != null)
+                        writer.close();
+                } catch (IOException e) {
+                    System.out.println("Exception in split(" + fileName + "), msg=" + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the shard of a key.
+     * @param key the canonical bytes of the key, from KeyCanonicalizer.canonicalize or lineKey
+     * @param numShards the number of shards
+     * @return the shard of the key, in [0, numShards)
+     */
+    static int shardOf(byte[] key, int numShards) {
+        return Hashes.reduce(Hashes.murmur3x64(key, 0, key.length, SHARD_SEED), numShards);
+    }
+
+    private String diffFile(int shard) {
+        return shardFile(directory, "differential", shard);
+    }
+
+    private String databaseFile(int shard) {
+        return shardFile(directory, "database", shard);
+    }
+
+    private static String shardFile(String directory, String prefix, int shard) {
+        return new File(directory, prefix + "-" + shard + ".txt").getPath();
+    }
+
+    private static void await(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Exception in ShardedDifferential, msg=" + e);
+        }
+    }
+}
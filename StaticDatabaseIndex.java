@@ -0,0 +1,577 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class indexes the keys of the database with a minimal perfect hash function, so that a record is found
+ * with one read of the file instead of a scan. The database does not change between compactions, so the index
+ * is built once (in parallel), saved next to the database and rebuilt only when the database changes.
+ *
+ * The perfect hash function is BBHash (Limasset et al., "Fast and scalable minimal perfect hashing for massive
+ * key sets", 2017). Every key is hashed once to 64 bits (XXH3 of its canonical bytes). Level 0 is a bit array
+ * of GAMMA bits per key; every key is mapped to one bit of it, and the bits hit by exactly one key are set.
+ * Those keys are placed; the others go to level 1, a bit array of GAMMA bits per remaining key, and so on.
+ * The slot of a key is the number of set bits before its bit in all the levels (a rank, with a count every
+ * 512 bits), so the n keys get the slots 0 .. n-1. That is about 3.7 bits per key for GAMMA = 2. The few keys
+ * left after MAX_LEVELS levels, in practice only keys with the same 64-bit hash, such as duplicate keys, are
+ * kept in a map: a duplicate key maps to its first line, the record a scan finds, and only a hash shared by
+ * different keys is marked ambiguous and looked up by a scan.
+ *
+ * Every slot holds the line number of its record, not its file offset, in as many bits as the largest one
+ * needs, and a 16-bit fingerprint of its key. A line number takes 22 bits for 4 million records where an offset
+ * would take 32 or more, and the LineIndex of the database, which gives the length of a record anyway, turns it
+ * into the offset. A key that is not in the database is mapped to some slot too: its fingerprint rejects it
+ * without reading the file, except for 1 key in 65536, whose record is read and does not match it.
+ *
+ * The index is saved in database + ".phf":
+ *  MAGIC "PHF1", the length and the last modification time of the database, the canonicalizer mode, the number
+ *  of keys, the number of levels and the words of each level, the fingerprints, the packed line numbers, and
+ *  the (hash, line) pairs of the map.
+ *
+ * Usage: java StaticDatabaseIndex [database] [number of lookups]
+ * builds or loads the index of the database and compares its lookups with scans of the database.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public final class StaticDatabaseIndex implements AutoCloseable {
+
+    static final int MAGIC = 0x50484631;//"PHF1"
+    static final int GAMMA = 2;//bits per remaining key in every level
+    static final int MAX_LEVELS = 32;
+    static final long LEVEL_SEED = 0x9e3779b97f4a7c15L;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final String database;
+    private final KeyCanonicalizer canonicalizer;
+    private final LineIndex lines;
+    private final int numKeys;
+    private final int[] levelStarts;//the first word of every level in bits, and the end of the last one
+    private final long[] bits;//the levels, one after the other
+    private final int[] ranks;//the number of set bits before every block of 8 words
+    private final short[] fingerprints;//by slot
+    private final long[] packedLines;//the line number of every slot, lineBits bits each
+    private final int lineBits;
+    private final Map<Long, Integer> overflow;//the line of the keys that were not placed in a level, by hash
+    private final Set<Long> ambiguous;//hashes of several keys of the overflow, looked up by a scan
+    private final FileChannel channel;
+
+    public static void main(String[] args) throws IOException {
+        String database = args.length > 0 ? args[0] : "database.txt";
+        int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long start = System.nanoTime();
+        try (StaticDatabaseIndex index = open(database, database + ".phf", KeyCanonicalizer.CASE_SENSITIVE)) {
+            System.out.printf("Opened the index of %d keys of %s in %.1f ms: %.2f bits per key for the hash function, %.2f MB in all%n",
+                    index.numKeys(), database, (System.nanoTime() - start) / 1e6, index.bitsPerKey(), index.memoryBytes() / 1e6);
+            Random random = new Random(42);
+            String[] present = new String[numLookups];
+            String[] absent = new String[numLookups];
+            for (int i = 0; i < numLookups; i++) {
+                present[i] = BloomDifferential.keyOf(index.lines.line(random.nextInt(index.numKeys())));
+                absent[i] = "no such key " + i;
+            }
+            int mismatches = 0;
+            long indexNanos = 0;
+            long scanNanos = 0;
+            for (int i = 0; i < numLookups; i++) {
+                long t0 = System.nanoTime();
+                String record = index.find(present[i]);
+                long t1 = System.nanoTime();
+                String scanned = i < 100 ? LineScanner.forCurrentThread().find(database, present[i]) : record;
+                long t2 = System.nanoTime();
+                indexNanos += t1 - t0;
+                scanNanos += t2 - t1;
+                if (record == null || !record.equals(scanned))
+                    mismatches++;
+            }
+            int falsePositives = 0;
+            long absentNanos = 0;
+            for (String key : absent) {
+                long t0 = System.nanoTime();
+                if (index.find(key) != null)
+                    falsePositives++;
+                absentNanos += System.nanoTime() - t0;
+            }
+            System.out.printf("Present keys: %.1f us by the index, %.1f us by a scan, %d mismatches%n",
+                    indexNanos / 1e3 / numLookups, scanNanos / 1e3 / Math.min(100, numLookups), mismatches);
+            System.out.printf("Absent keys: %.1f us by the index, %d found%n", absentNanos / 1e3 / numLookups, falsePositives);
+        }
+    }
+
+    private StaticDatabaseIndex(String database, KeyCanonicalizer canonicalizer, LineIndex lines, int[] levelStarts, long[] bits,
+                                short[] fingerprints, long[] packedLines, Map<Long, Integer> overflow, Set<Long> ambiguous) throws IOException {
+        this.database = database;
+        this.canonicalizer = canonicalizer;
+        this.lines = lines;
+        this.numKeys = lines.numLines();
+        this.levelStarts = levelStarts;
+        this.bits = bits;
+        this.fingerprints = fingerprints;
+        this.packedLines = packedLines;
+        this.lineBits = lineBits(numKeys);
+        this.overflow = overflow;
+        this.ambiguous = ambiguous;
+        ranks = new int[bits.length / 8 + 1];
+        int rank = 0;
+        for (int w = 0; w < bits.length; w++) {
+            if (w % 8 == 0)
+                ranks[w / 8] = rank;
+            rank += Long.bitCount(bits[w]);
+        }
+        if (rank != fingerprints.length)
+            throw new IOException("the index of " + database + " has " + rank + " slots for " + fingerprints.length + " keys");
+        channel = FileChannel.open(Paths.get(database), StandardOpenOption.READ);
+    }
+
+    /**
+     * Get the index of a database: load indexFile if it was saved for the current database with the same
+     * canonicalizer, otherwise build it and save it there.
+     * @param database the name of the database
+     * @param indexFile the file of the index
+     * @param canonicalizer the canonicalizer of the keys
+     * @return the index
+     * @throws IOException if the database cannot be read
+     */
+    public static StaticDatabaseIndex open(String database, String indexFile, KeyCanonicalizer canonicalizer) throws IOException {
+        if (new File(indexFile).exists()) {
+            try {
+                StaticDatabaseIndex index = load(database, indexFile);
+                if (index.canonicalizer == canonicalizer)
+                    return index;
+                index.close();
+            } catch (IOException e) {
+                System.out.println("Exception in getFileContents(" + indexFile + "), msg=" + e + ", rebuilding it");
+            }
+        }
+        StaticDatabaseIndex index = build(database, canonicalizer, Runtime.getRuntime().availableProcessors());
+        try {
+            index.save(indexFile);
+        } catch (IOException e) {
+            System.out.println("Exception in getFileContents(" + indexFile + "), msg=" + e);
+        }
+        return index;
+    }
+
+    /**
+     * Build the index of a database. The keys are hashed by numThreads threads, each scanning one part of the
+     * database (as DatabaseFilter.build), and the keys of every level are mapped to its bits by numThreads threads.
+     * @param database the name of the database
+     * @param canonicalizer the canonicalizer of the keys
+     * @param numThreads the number of threads
+     * @return the index
+     * @throws IOException if the database cannot be read
+     */
+    public static StaticDatabaseIndex build(String database, KeyCanonicalizer canonicalizer, int numThreads) throws IOException {
+        LineIndex lines = LineIndex.open(database);
+        int numKeys = lines.numLines();
+        int parts = Math.max(1, numThreads);
+        ExecutorService pool = Executors.newFixedThreadPool(parts);
+        boolean built = false;
+        try {
+            //hash every key once; the levels remix the hashes
+            long[] hashes = new long[numKeys];
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int p = 0; p < parts; p++) {
+                int firstLine = (int) ((long) numKeys * p / parts);
+                long start = lines.offset(firstLine);
+                long end = lines.offset((int) ((long) numKeys * (p + 1) / parts));
+                tasks.add(() -> {
+                    int[] line = {firstLine};
+                    try (LineScanner scanner = new LineScanner(LineScanner.DEFAULT_BUFFER_SIZE)) {
+                        scanner.scan(database, start, end, (buf, from, to) -> {
+                            byte[] key = canonicalizer.lineKey(buf, from, to);
+                            hashes[line[0]++] = Hashes.xxh3(key, 0, key.length, 0);
+                            return true;
+                        });
+                    }
+                    return null;
+                });
+            }
+            invokeAll(pool, tasks);
+
+            int[] remaining = new int[numKeys];//the lines of the keys that are not placed yet
+            for (int i = 0; i < numKeys; i++)
+                remaining[i] = i;
+            int numRemaining = numKeys;
+            List<long[]> levels = new ArrayList<long[]>();
+            while (numRemaining > 0 && levels.size() < MAX_LEVELS) {
+                int level = levels.size();
+                long[] seen = new long[(int) (((long) GAMMA * numRemaining + 63) / 64)];
+                long[] collided = new long[seen.length];
+                int levelBits = seen.length * 64;
+                int[] keys = remaining;
+                int count = numRemaining;
+                tasks.clear();
+                for (int p = 0; p < parts; p++) {
+                    int from = (int) ((long) count * p / parts);
+                    int to = (int) ((long) count * (p + 1) / parts);
+                    tasks.add(() -> {
+                        for (int i = from; i < to; i++) {
+                            int bit = position(hashes[keys[i]], level, levelBits);
+                            long mask = 1L << bit;
+                            if (((long) WORDS.getAndBitwiseOr(seen, bit >>> 6, mask) & mask) != 0)
+                                WORDS.getAndBitwiseOr(collided, bit >>> 6, mask);
+                        }
+                        return null;
+                    });
+                }
+                invokeAll(pool, tasks);
+                for (int w = 0; w < seen.length; w++)
+                    seen[w] &= ~collided[w];//the bits of exactly one key
+                levels.add(seen);
+                int next = 0;
+                for (int i = 0; i < count; i++) {
+                    int bit = position(hashes[keys[i]], level, levelBits);
+                    if ((seen[bit >>> 6] & (1L << bit)) == 0)
+                        remaining[next++] = keys[i];
+                }
+                numRemaining = next;
+            }
+
+            int[] levelStarts = new int[levels.size() + 1];
+            for (int l = 0; l < levels.size(); l++)
+                levelStarts[l + 1] = levelStarts[l] + levels.get(l).length;
+            long[] bits = new long[levelStarts[levels.size()]];
+            for (int l = 0; l < levels.size(); l++)
+                System.arraycopy(levels.get(l), 0, bits, levelStarts[l], levels.get(l).length);
+
+            //a duplicate key resolves to its first line; only different keys with the same hash need a scan
+            Map<Long, Integer> overflow = new HashMap<Long, Integer>();
+            Set<Long> ambiguous = new HashSet<Long>();
+            Map<Long, byte[]> overflowKeys = new HashMap<Long, byte[]>();
+            Arrays.sort(remaining, 0, numRemaining);//the first line of a duplicate key is its record
+            for (int i = 0; i < numRemaining; i++) {
+                long hash = hashes[remaining[i]];
+                byte[] key = lineKey(lines, remaining[i], canonicalizer);
+                byte[] first = overflowKeys.putIfAbsent(hash, key);
+                if (first == null)
+                    overflow.put(hash, remaining[i]);
+                else if (!Arrays.equals(first, key))
+                    ambiguous.add(hash);
+            }
+
+            int numSlots = numKeys - numRemaining;
+            short[] fingerprints = new short[numSlots];
+            long[] packedLines = new long[(int) (((long) numSlots * lineBits(numKeys) + 63) / 64)];
+            StaticDatabaseIndex index = new StaticDatabaseIndex(database, canonicalizer, lines, levelStarts, bits,
+                    fingerprints, packedLines, overflow, ambiguous);
+            for (int line = 0; line < numKeys; line++) {
+                long slot = index.slot(hashes[line]);
+                if (slot >= 0) {
+                    fingerprints[(int) slot] = fingerprint(hashes[line]);
+                    index.setLine((int) slot, line);
+                }
+            }
+            built = true;
+            return index;
+        } finally {
+            pool.shutdownNow();
+            if (!built)
+                lines.close();
+        }
+    }
+
+    private static void invokeAll(ExecutorService pool, List<Callable<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> done : pool.invokeAll(tasks))
+                done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("building the index interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Get the bit of a key in a level: the hash remixed with the number of the level, reduced to the level.
+     */
+    private static int position(long hash, int level, int levelBits) {
+        return Hashes.reduce(Hashes.fmix64(hash + (level + 1) * LEVEL_SEED), levelBits);
+    }
+
+    private static short fingerprint(long hash) {
+        return (short) hash;//the low bits; the levels use the high bits of the remixed hash
+    }
+
+    private static int lineBits(int numKeys) {
+        return Math.max(1, 64 - Long.numberOfLeadingZeros(numKeys - 1L));
+    }
+
+    /**
+     * Get the slot of a hash: the rank of its bit in the first level where that bit is set.
+     * @return the slot, or -1 if its bit is not set in any level
+     */
+    private long slot(long hash) {
+        for (int level = 0; level + 1 < levelStarts.length; level++) {
+            int levelBits = (levelStarts[level + 1] - levelStarts[level]) * 64;
+            long bit = (long) levelStarts[level] * 64 + position(hash, level, levelBits);
+            int word = (int) (bit >>> 6);
+            if ((bits[word] & (1L << bit)) != 0) {
+                int rank = ranks[word >>> 3];
+                for (int w = word & ~7; w < word; w++)
+                    rank += Long.bitCount(bits[w]);
+                return rank + Long.bitCount(bits[word] & ((1L << bit) - 1));
+            }
+        }
+        return -1;
+    }
+
+    private int getLine(int slot) {
+        long bit = (long) slot * lineBits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = packedLines[word] >>> shift;
+        if (shift + lineBits > 64)
+            value |= packedLines[word + 1] << (64 - shift);
+        return (int) (value & ((1L << lineBits) - 1));
+    }
+
+    private void setLine(int slot, int line) {
+        long bit = (long) slot * lineBits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        packedLines[word] |= (long) line << shift;
+        if (shift + lineBits > 64)
+            packedLines[word + 1] |= (long) line >>> (64 - shift);
+    }
+
+    /**
+     * Find the record of a key.
+     * @param key the key "word1 word2 word3 word4"
+     * @return the record, or null if the database has no record with the key
+     * @throws IOException if the database cannot be read
+     */
+    public String find(String key) throws IOException {
+        return find(canonicalizer.canonicalize(key));
+    }
+
+    /**
+     * Find the record of a key with at most one read of the database.
+     * @param key canonical bytes of the key, from canonicalizer().canonicalize
+     * @return the record, or null if the database has no record with the key
+     * @throws IOException if the database cannot be read
+     */
+    public String find(byte[] key) throws IOException {
+        long hash = Hashes.xxh3(key, 0, key.length, 0);
+        long slot = slot(hash);
+        if (slot >= 0) {
+            if (fingerprints[(int) slot] != fingerprint(hash))
+                return null;//the key is not in the database, without reading it
+            return readRecord(getLine((int) slot), key);
+        }
+        if (ambiguous.contains(hash))
+            return LineScanner.forCurrentThread().find(database, key, canonicalizer);
+        Integer line = overflow.get(hash);
+        return line != null ? readRecord(line, key) : null;
+    }
+
+    /**
+     * Get the canonical key of a line of the database.
+     */
+    private static byte[] lineKey(LineIndex lines, int line, KeyCanonicalizer canonicalizer) throws IOException {
+        byte[] record = lines.line(line).getBytes(StandardCharsets.UTF_8);
+        return canonicalizer.lineKey(ByteBuffer.wrap(record), 0, record.length);
+    }
+
+    /**
+     * Read a line of the database if its key is key.
+     */
+    private String readRecord(int line, byte[] key) throws IOException {
+        long start = lines.offset(line);
+        ByteBuffer record = ByteBuffer.allocate((int) (lines.offset(line + 1) - start));
+        while (record.hasRemaining()) {
+            if (channel.read(record, start + record.position()) < 0)
+                throw new IOException(database + " is shorter than its index");
+        }
+        int end = record.position();
+        if (end > 0 && record.get(end - 1) == '\n')
+            end--;
+        if (end > 0 && record.get(end - 1) == '\r')
+            end--;
+        return canonicalizer.keyEquals(record, 0, end, key) ? LineScanner.decode(record, 0, end) : null;
+    }
+
+    /**
+     * Save this index, to be loaded by load while the database does not change.
+     * @param indexFile the file of the index
+     * @throws IOException if the index cannot be written
+     */
+    public void save(String indexFile) throws IOException {
+        File file = new File(database);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeByte(canonicalizer.mode().ordinal());
+            out.writeInt(numKeys);
+            out.writeInt(levelStarts.length - 1);
+            for (int level = 0; level + 1 < levelStarts.length; level++)
+                out.writeInt(levelStarts[level + 1] - levelStarts[level]);
+            for (long word : bits)
+                out.writeLong(word);
+            out.writeInt(fingerprints.length);
+            for (short fingerprint : fingerprints)
+                out.writeShort(fingerprint);
+            for (long word : packedLines)
+                out.writeLong(word);
+            out.writeInt(overflow.size());
+            for (Map.Entry<Long, Integer> entry : overflow.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(entry.getValue());
+                out.writeBoolean(ambiguous.contains(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Load an index saved by save.
+     * @param database the name of the database
+     * @param indexFile the file of the index
+     * @return the index
+     * @throws IOException if the index cannot be read, or the database has changed since it was saved
+     */
+    public static StaticDatabaseIndex load(String database, String indexFile) throws IOException {
+        File file = new File(database);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(indexFile + " is not a database index");
+            if (in.readLong() != file.length() || in.readLong() != file.lastModified())
+                throw new IOException(database + " has changed since " + indexFile + " was saved");
+            int mode = in.readUnsignedByte();
+            if (mode >= KeyCanonicalizer.Mode.values().length)
+                throw new IOException("unknown canonicalizer mode " + mode);
+            int numKeys = in.readInt();
+            int numLevels = in.readInt();
+            if (numKeys < 0 || numLevels < 0 || numLevels > MAX_LEVELS)
+                throw new IOException(indexFile + " is corrupted");
+            int[] levelStarts = new int[numLevels + 1];
+            for (int level = 0; level < numLevels; level++) {
+                int words = in.readInt();
+                if (words <= 0 || levelStarts[level] + (long) words > Integer.MAX_VALUE / 64)
+                    throw new IOException(indexFile + " is corrupted");
+                levelStarts[level + 1] = levelStarts[level] + words;
+            }
+            long[] bits = new long[levelStarts[numLevels]];
+            for (int w = 0; w < bits.length; w++)
+                bits[w] = in.readLong();
+            int numSlots = in.readInt();
+            if (numSlots < 0 || numSlots > numKeys)
+                throw new IOException(indexFile + " is corrupted");
+            short[] fingerprints = new short[numSlots];
+            for (int i = 0; i < numSlots; i++)
+                fingerprints[i] = in.readShort();
+            long[] packedLines = new long[(int) (((long) numSlots * lineBits(numKeys) + 63) / 64)];
+            for (int w = 0; w < packedLines.length; w++)
+                packedLines[w] = in.readLong();
+            int numOverflow = in.readInt();
+            if (numOverflow < 0 || numOverflow > numKeys - numSlots)
+                throw new IOException(indexFile + " is corrupted");
+            Map<Long, Integer> overflow = new HashMap<Long, Integer>();
+            Set<Long> ambiguous = new HashSet<Long>();
+            for (int i = 0; i < numOverflow; i++) {
+                long hash = in.readLong();
+                overflow.put(hash, in.readInt());
+                if (in.readBoolean())
+                    ambiguous.add(hash);
+            }
+            LineIndex lines = LineIndex.open(database);
+            try {
+                if (lines.numLines() != numKeys)
+                    throw new IOException(indexFile + " has " + numKeys + " keys, " + database + " has " + lines.numLines() + " lines");
+                return new StaticDatabaseIndex(database, KeyCanonicalizer.of(KeyCanonicalizer.Mode.values()[mode]), lines,
+                        levelStarts, bits, fingerprints, packedLines, overflow, ambiguous);
+            } catch (IOException e) {
+                lines.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Get the name of the indexed database.
+     * @return the name of the database
+     */
+    public String database() {
+        return database;
+    }
+
+    /**
+     * Get the canonicalizer of the keys.
+     * @return the canonicalizer
+     */
+    public KeyCanonicalizer canonicalizer() {
+        return canonicalizer;
+    }
+
+    /**
+     * Get the number of keys of the database.
+     * @return the number of lines of the database
+     */
+    public int numKeys() {
+        return numKeys;
+    }
+
+    /**
+     * Get the number of hashes shared by different keys, whose records are found by a scan.
+     * @return the number of ambiguous hashes
+     */
+    int numAmbiguous() {
+        return ambiguous.size();
+    }
+
+    /**
+     * Get the size of the perfect hash function: the levels and their ranks.
+     * @return the bits per key
+     */
+    public double bitsPerKey() {
+        return numKeys == 0 ? 0 : ((double) bits.length * 64 + (double) ranks.length * 32) / numKeys;
+    }
+
+    /**
+     * Get the memory of the index: the perfect hash function, the fingerprints, the line numbers and the map,
+     * without the LineIndex of the database.
+     * @return the bytes of the index
+     */
+    public long memoryBytes() {
+        return (long) bits.length * 8 + (long) ranks.length * 4 + (long) fingerprints.length * 2
+                + (long) packedLines.length * 8 + (long) overflow.size() * 64;
+    }
+
+    /**
+     * Close the database.
+     * @throws IOException if the database cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        lines.close();
+    }
+}
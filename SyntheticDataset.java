@@ -0,0 +1,145 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * This class generates a synthetic data set with the same shape as the real one used in EmpericalComparison:
+ *  database.txt        word1 word2 word3 word4 year1 n1 m1 year2 n2 m2 .....
+ *  keysOfDatabase.txt  word1 word2 word3 word4 (the keys of database.txt, one per line)
+ *  differential.txt    changed records of the database plus records that are new
+ *  subset.txt          keys that are in the database but not in the differential file
+ * The generation is deterministic for a given seed and streams the records, so large data sets can be produced
+ * without holding them in memory.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+
+public class SyntheticDataset {
+
+    private static final int VOCABULARY_SIZE = 2000;//number of distinct words used to build the 4-word keys
+    private static final long KEY_SPACE = (long) VOCABULARY_SIZE * VOCABULARY_SIZE * VOCABULARY_SIZE * VOCABULARY_SIZE;
+    private static final long KEY_MULTIPLIER = 0x9E3779B97L;//coprime with VOCABULARY_SIZE, so i -> i * KEY_MULTIPLIER % KEY_SPACE is one-to-one
+
+    private final String[] vocabulary = new String[VOCABULARY_SIZE];
+    private final long seed;
+
+    public static void main(String[] args) {
+        String directory = args.length > 0 ? args[0] : ".";
+        int numRecords = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        SyntheticDataset dataset = new SyntheticDataset(42);
+        dataset.generate(directory, numRecords, 0.1, 722);
+    }
+
+    /**
+     * @param seed the seed of the generator; the same seed always produces the same data set
+     */
+    public SyntheticDataset(long seed) {
+        this.seed = seed;
+        Random rand = new Random(seed);
+        HashSet<String> used = new HashSet<String>();
+        int count = 0;
+        while (count < VOCABULARY_SIZE) {
+            int length = rand.nextInt(9) + 2;//words of length 2 to 10
+            StringBuilder word = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                word.append((char) (rand.nextInt(26) + 'a'));
+            }
+            if (used.add(word.toString())) {
+                vocabulary[count++] = word.toString();
+            }
+        }
+    }
+
+    /**
+     * Generate the four files of the data set in the given directory.
+     * @param directory the directory where database.txt, keysOfDatabase.txt, differential.txt and subset.txt are written
+     * @param numRecords the number of records in database.txt
+     * @param diffFraction the fraction of the number of database records that is written to differential.txt.
+     *        Half of these are changed database records and half are new records.
+     * @param subsetSize the number of keys written to subset.txt
+     */
+    public void generate(String directory, int numRecords, double diffFraction, int subsetSize) {
+        int numDiff = (int) (numRecords * diffFraction);
+        int numChanged = numDiff / 2;
+        int changedStride = Math.max(1, numRecords / Math.max(1, numChanged));//every changedStride-th record is changed
+        File dir = new File(directory);
+        try (BufferedWriter db = new BufferedWriter(new FileWriter(new File(dir, "database.txt")), 1 << 16);
+             BufferedWriter keys = new BufferedWriter(new FileWriter(new File(dir, "keysOfDatabase.txt")), 1 << 16);
+             BufferedWriter diff = new BufferedWriter(new FileWriter(new File(dir, "differential.txt")), 1 << 16);
+             BufferedWriter subset = new BufferedWriter(new FileWriter(new File(dir, "subset.txt")))) {
+            int changed = 0;
+            int unchangedSeen = 0;
+            int subsetWritten = 0;
+            int subsetStride = Math.max(1, (numRecords - numChanged) / Math.max(1, subsetSize));
+            for (int i = 0; i < numRecords; i++) {
+                String key = key(i);
+                Random rand = new Random(seed ^ (i * 0x5DEECE66DL));
+                db.write(key);
+                db.write(history(rand, 0));
+                db.newLine();
+                keys.write(key);
+                keys.newLine();
+                if (i % changedStride == 0 && changed < numChanged) {//a changed record carries one more year of counts
+                    diff.write(key);
+                    diff.write(history(new Random(seed ^ (i * 0x5DEECE66DL)), 1));
+                    diff.newLine();
+                    changed++;
+                } else {
+                    if (unchangedSeen % subsetStride == 0 && subsetWritten < subsetSize) {
+                        subset.write(key);
+                        subset.newLine();
+                        subsetWritten++;
+                    }
+                    unchangedSeen++;
+                }
+            }
+            for (int i = numRecords; i < numRecords + (numDiff - changed); i++) {//new records are not in the database
+                diff.write(key(i));
+                diff.write(history(new Random(seed ^ (i * 0x5DEECE66DL)), 0));
+                diff.newLine();
+            }
+        } catch (IOException e) {
+            System.out.println("Exception in generate(" + directory + "), msg=" + e);
+        }
+    }
+
+    /**
+     * Get the key of the ith record. Different values of i always give different keys.
+     * @param i the index of a record, 0 <= i < 2^27 (so that i * KEY_MULTIPLIER does not overflow)
+     * @return the 4-word key "word1 word2 word3 word4" of the ith record
+     */
+    public String key(long i) {
+        long v = Math.floorMod(i * KEY_MULTIPLIER + seed, KEY_SPACE);
+        StringBuilder key = new StringBuilder(32);
+        for (int w = 0; w < 4; w++) {
+            if (w > 0)
+                key.append(' ');
+            key.append(vocabulary[(int) (v % VOCABULARY_SIZE)]);
+            v /= VOCABULARY_SIZE;
+        }
+        return key.toString();
+    }
+
+    /**
+     * Generate the " year1 n1 m1 year2 n2 m2 ..." part of a record.
+     * @param rand the generator of the record
+     * @param extraYears the number of years appended after the generated history
+     * @return the history, starting with a space
+     */
+    private String history(Random rand, int extraYears) {
+        StringBuilder sb = new StringBuilder(64);
+        int years = rand.nextInt(8) + 1;
+        int year = 1700 + rand.nextInt(250);
+        for (int y = 0; y < years + extraYears; y++) {
+            int n = rand.nextInt(50) + 1;
+            int m = rand.nextInt(n) + 1;//m (number of volumes) never exceeds n (number of matches)
+            sb.append(' ').append(year).append(' ').append(n).append(' ').append(m);
+            year += rand.nextInt(10) + 1;
+        }
+        return sb.toString();
+    }
+}
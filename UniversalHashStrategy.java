@@ -0,0 +1,106 @@
+
+/**
+ * @author Xiaoyun Fu and Gaurav Raj
+ * All rights reserved.
+ * k random hash functions h_i(x) = (a_i * x + b_i) % p, where p is the filter size.
+ * The input x_i of the ith function is the 31-polynomial hash (as String.hashCode) of the key changed by
+ * f_0, ..., f_i, where f_j appends the jth character of the key to the key. Keys shorter than k are first
+ * padded with '$', so that the jth character exists.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public final class UniversalHashStrategy implements HashStrategy {
+
+    private final int p;//the filter size, a prime
+    private final int[] a;//the k random numbers a \in [1, p-1]
+    private final int[] b;//the k random numbers b \in [0, p-1]
+
+    /**
+     * Generate k pairs of independent random numbers <a, b>.
+     * @param filterSize the size of the filter, a prime
+     * @param numHashes the number of hash functions (num of <a, b> pairs)
+     */
+    public UniversalHashStrategy(int filterSize, int numHashes) {
+        p = filterSize;
+        a = new int[numHashes];
+        b = new int[numHashes];
+        Random rand = new Random();
+        for (int i = 0; i < numHashes; i++) {
+            a[i] = rand.nextInt(p - 1) + 1; // a \in {1, 2, ..., p - 1}
+            b[i] = rand.nextInt(p);    // b \in {0, 1, 2, ..., p - 1}
+        }
+    }
+
+    private UniversalHashStrategy(int p, int[] a, int[] b) {
+        this.p = p;
+        this.a = a;
+        this.b = b;
+    }
+
+    static UniversalHashStrategy read(DataInputStream in, int filterSize, int numHashes) throws IOException {
+        int[] a = new int[numHashes];
+        int[] b = new int[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            a[i] = in.readInt();
+            b[i] = in.readInt();
+        }
+        return new UniversalHashStrategy(filterSize, a, b);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(UNIVERSAL);
+        out.writeInt(p);
+        out.writeInt(a.length);
+        for (int i = 0; i < a.length; i++) {
+            out.writeInt(a[i]);
+            out.writeInt(b[i]);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof UniversalHashStrategy))
+            return false;
+        UniversalHashStrategy other = (UniversalHashStrategy) o;
+        return other.p == p && Arrays.equals(other.a, a) && Arrays.equals(other.b, b);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * p + Arrays.hashCode(a)) + Arrays.hashCode(b);
+    }
+
+    @Override
+    public int numHashes() {
+        return a.length;
+    }
+
+    @Override
+    public int filterSize() {
+        return p;
+    }
+
+    @Override
+    public int index(int i, byte[] key, int offset, int length) {
+        int k = a.length;
+        int x = 0;
+        for (int j = 0; j < Math.max(length, k); j++)//hash of the key padded with '$'
+            x = 31 * x + character(key, offset, length, j);
+        for (int j = 0; j <= i; j++)//append the jth character, for f_0, ..., f_i
+            x = 31 * x + character(key, offset, length, j);
+        return (int) Math.floorMod(a[i] * (long) x + b[i], (long) p);  //computed in long so a[i]*x cannot overflow
+    }
+
+    /**
+     * Get the jth character of the key padded with '$'.
+     */
+    private static int character(byte[] key, int offset, int length, int j) {
+        return j < length ? key[offset + j] & 0xff : '$';
+    }
+}
@@ -5,12 +5,12 @@
  * This classes implements a Fowler–Noll–Vo hash function.
  */
 
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
 
 public class kFNV {
 
     private long offset_basis;
-    private final long FNV_prime = 0x100000001b3L;
     private int a; //h(x) = (ax + b) % p This is the a.
     private int b; //h(x) = (ax + b) % p This is the b.
     private int filterSize; //h(x) = (ax + b) % p This is the p.
@@ -25,21 +25,43 @@ public class kFNV {
             b = rand.nextInt(filterSize);
     }
 
+    /**
+     * Re-creates a hash function from its parameters, e.g. when a saved filter is read back.
+     * @param offba the offset basis
+     * @param a the value a used in h(x) = a * x + b
+     * @param b the value b used in h(x) = a * x + b
+     * @param size the filter size p
+     */
+    kFNV(long offba, int a, int b, int size){
+        offset_basis = offba;
+        this.a = a;
+        this.b = b;
+        filterSize = size;
+    }
+
     /**
      * gets the hash value of input string str using Fowler–Noll–Vo hash function.
      * @param str a string whose hash value s to be computed
-     * @return the hash value of str using MurmurHash function.
+     * @return the hash value of str using Fowler–Noll–Vo hash function, in [0, filterSize).
      */
     public int hashV(String str){
-        long hash = offset_basis;
-        int index = 0;
-        char[] charArray = str.toCharArray();
-        for(int i = 0; i < charArray.length; i++){
-            hash = hash ^ charArray[i];
-            hash = hash * FNV_prime;
-        }
-        index = (int) ((Math.abs (a * Math.abs(hash) + b)) % filterSize);
-        return index;
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        return hashV(bytes, 0, bytes.length);
+    }
+
+    /**
+     * gets the hash value of the UTF-8 bytes of a key using Fowler–Noll–Vo hash function.
+     * The 64-bit FNV-1a value is mixed, reduced to x in [0, filterSize), then h(x) = (ax + b) % p is applied.
+     * Since a, x, b < p < 2^31, ax + b cannot overflow a long.
+     * @param key the bytes of the key
+     * @param offset the index of the first byte of the key
+     * @param length the number of bytes of the key
+     * @return the hash value of the key, in [0, filterSize).
+     */
+    public int hashV(byte[] key, int offset, int length){
+        long hash = Hashes.fmix64(Hashes.fnv1a64Words(key, offset, length, offset_basis));
+        long x = Hashes.reduce(hash, filterSize);
+        return (int) ((a * x + b) % filterSize);
     }
 
     /**
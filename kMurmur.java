@@ -5,6 +5,7 @@
  * This classes implements a MurmurHash hash function.
  */
 
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
 
 public class kMurmur {
@@ -24,23 +25,48 @@ public class kMurmur {
             b = rand.nextInt(filterSize);
     }
 
+    /**
+     * Re-creates a hash function from its parameters, e.g. when a saved filter is read back.
+     * @param value the seed
+     * @param a the value a used in h(x) = a * x + b
+     * @param b the value b used in h(x) = a * x + b
+     * @param size the filter size p
+     */
+    kMurmur(int value, int a, int b, int size){
+        seedValue = value;
+        this.a = a;
+        this.b = b;
+        filterSize = size;
+    }
+
     /**
      * gets the hash value of input string str using MurmurHash function.
      * @param str a string whose hash value s to be computed
-     * @return the hash value of str using MurmurHash function.
+     * @return the hash value of str using MurmurHash function, in [0, filterSize).
      */
     public int hashV(String str){
-        int index = 0;
-        long hash = 0;
-        byte[] byteArray = str.getBytes();
-        hash = hash64(byteArray, byteArray.length, seedValue);
-        index = (int) ((Math.abs (a * Math.abs(hash) + b)) % filterSize);
-        return index;
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        return hashV(bytes, 0, bytes.length);
     }
 
+    /**
+     * gets the hash value of the UTF-8 bytes of a key using MurmurHash3 x64_128.
+     * The hash is reduced to x in [0, filterSize), then h(x) = (ax + b) % p is applied.
+     * Since a, x, b < p < 2^31, ax + b cannot overflow a long.
+     * @param key the bytes of the key
+     * @param offset the index of the first byte of the key
+     * @param length the number of bytes of the key
+     * @return the hash value of the key, in [0, filterSize).
+     */
+    public int hashV(byte[] key, int offset, int length){
+        long hash = Hashes.murmur3x64(key, offset, length, seedValue & 0xffffffffL);
+        long x = Hashes.reduce(hash, filterSize);
+        return (int) ((a * x + b) % filterSize);
+    }
 
 
-    /** Generates a 64 bit hash value from byte array of the given length and seed.
+
+    /** Generates a 64 bit hash value from byte array of the given length and seed (MurmurHash64A).
      * @param data byte array to hash
      * @param length length of the array to hash
      * @param seed initial seed value
@@ -82,4 +108,28 @@ public class kMurmur {
 
         return h;
     }
+
+    /**
+     * Get the seed used in MurmurHash.
+     * @return the seed
+     */
+    public int getSeedValue() {
+        return seedValue;
+    }
+
+    /**
+     * Get the value a used in h(x) = a * x + b
+     * @return the value a
+     */
+    public int getA() {
+        return a;
+    }
+
+    /**
+     * Get the value b used in h(x) = a * x + b
+     * @return the value b
+     */
+    public int getB() {
+        return b;
+    }
 }